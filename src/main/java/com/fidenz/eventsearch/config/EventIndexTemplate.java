@@ -0,0 +1,250 @@
+package com.fidenz.eventsearch.config;
+
+import com.fidenz.eventsearch.service.EventIndexResolver;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.admin.indices.alias.Alias;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.client.indices.GetIndexTemplatesRequest;
+import org.elasticsearch.client.indices.GetMappingsRequest;
+import org.elasticsearch.client.indices.IndexTemplateMetaData;
+import org.elasticsearch.client.indices.IndexTemplatesExistRequest;
+import org.elasticsearch.client.indices.PutIndexTemplateRequest;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Installs the index templates for event data: {@code event_detail} carries the mapping and index
+ * sorting for the single index and every {@code event_detail-*} partition, {@code event_detail_alias}
+ * puts the partitions behind the {@code event_detail} alias. Installed at startup and, should the
+ * cluster not be reachable then, again before the next ingest.
+ */
+@Slf4j
+@Component
+public class EventIndexTemplate {
+
+    private static final String MAPPING_TEMPLATE = "event_detail";
+    private static final String ALIAS_TEMPLATE = "event_detail_alias";
+    private static final String PARAMS = "Event.Params";
+
+    /**
+     * Keyword fields whose words free-text search should match, through an analyzed {@code .text}
+     * sub-field: the names people type, not identifiers or addresses.
+     */
+    private static final Set<String> FREE_TEXT = new HashSet<>(Arrays.asList("MessageType", "Node.Name", "Agg.Name", "Event.Topic"));
+
+    /**
+     * Bump whenever the mapping or settings below change. A template with a higher version was put
+     * by a newer release and is left alone.
+     */
+    public static final int TEMPLATE_VERSION = 4;
+
+    @Autowired
+    private RestHighLevelClient client;
+
+    @Autowired
+    private EventIndexResolver indexResolver;
+
+    /**
+     * {@code Event.Params} keys to index, as {@code Key:type}. Every other key is kept in
+     * {@code _source} only.
+     */
+    @Value("${spring.data.elasticsearch.index-params}")
+    private String[] indexedParams;
+
+    private final Map<String, String> fieldTypes = new LinkedHashMap<>();
+
+    private volatile boolean installed;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            ensureInstalled();
+        } catch (IOException e) {
+            log.warn("Could not install the event_detail index templates yet", e);
+        }
+    }
+
+    public synchronized void ensureInstalled() throws IOException {
+        if (installed) {
+            return;
+        }
+        putMappingTemplate();
+
+        if (isUnpartitionedIndex()) {
+            if (indexResolver.isPartitioned()) {
+                log.error("An unpartitioned event_detail index exists, so event_detail cannot become the alias of the "
+                        + "partitions. Writing to the single index until it is reindexed and removed.");
+                indexResolver.disablePartitioning();
+            }
+            if (!isManaged(EventIndexResolver.ALIAS)) {
+                log.warn("The event_detail index was created with a dynamic mapping; aggregating on its .keyword "
+                        + "sub-fields until it is reindexed.");
+                indexResolver.useDynamicMapping();
+            }
+            long legacy = countLegacyIds();
+            if (legacy > 0) {
+                log.error("event_detail holds {} documents with the old counter ids. Their lines get new ids when "
+                        + "ingested again and would be duplicated; drop or reindex event_detail before re-ingesting.", legacy);
+            }
+        } else if (indexResolver.isPartitioned()) {
+            PutIndexTemplateRequest request = new PutIndexTemplateRequest(ALIAS_TEMPLATE)
+                    .patterns(Collections.singletonList(EventIndexResolver.PARTITION_PREFIX + "*"))
+                    .alias(new Alias(EventIndexResolver.ALIAS));
+            client.indices().putTemplate(request, RequestOptions.DEFAULT);
+        }
+        installed = true;
+    }
+
+    private void putMappingTemplate() throws IOException {
+        Integer installedVersion = installedVersion();
+        if (installedVersion != null && installedVersion > TEMPLATE_VERSION) {
+            log.info("Keeping event_detail template version {}, newer than {}", installedVersion, TEMPLATE_VERSION);
+            return;
+        }
+
+        PutIndexTemplateRequest request = new PutIndexTemplateRequest(MAPPING_TEMPLATE)
+                .patterns(Arrays.asList(EventIndexResolver.ALIAS, EventIndexResolver.PARTITION_PREFIX + "*"))
+                .version(TEMPLATE_VERSION)
+                .settings(Settings.builder()
+                        .putList("index.sort.field", "Timestamp", "id")
+                        .putList("index.sort.order", "desc", "desc"))
+                .mapping(mapping());
+        client.indices().putTemplate(request, RequestOptions.DEFAULT);
+        if (installedVersion == null || installedVersion < TEMPLATE_VERSION) {
+            log.info("Installed event_detail template version {}", TEMPLATE_VERSION);
+        }
+    }
+
+    private Integer installedVersion() throws IOException {
+        if (!client.indices().existsTemplate(new IndexTemplatesExistRequest(MAPPING_TEMPLATE), RequestOptions.DEFAULT)) {
+            return null;
+        }
+        for (IndexTemplateMetaData template : client.indices()
+                .getIndexTemplate(new GetIndexTemplatesRequest(MAPPING_TEMPLATE), RequestOptions.DEFAULT)
+                .getIndexTemplates()) {
+            return template.version();
+        }
+        return null;
+    }
+
+    /**
+     * Mapped type of a field by its dotted path, {@code null} when it is not indexed.
+     */
+    public String fieldType(String field) {
+        return fieldTypes.get(field);
+    }
+
+    /**
+     * Identifiers and names are keywords so they filter and aggregate without a {@code .keyword}
+     * copy; the {@link #FREE_TEXT} names also get a {@code .text} sub-field. {@code Event.Params} is
+     * not dynamic: its keys vary per event type and would otherwise grow the mapping without bound.
+     */
+    @PostConstruct
+    public void init() {
+        fieldTypes.put("Timestamp", "date");
+        fieldTypes.put("MessageType", "keyword");
+        fieldTypes.put("id", "long");
+        fieldTypes.put("Node.Name", "keyword");
+        fieldTypes.put("Node.IPAddress", "keyword");
+        fieldTypes.put("Node.Plugin", "keyword");
+        fieldTypes.put("Agg.Name", "keyword");
+        fieldTypes.put("Agg.Id", "keyword");
+        fieldTypes.put("Agg.IPAddress", "keyword");
+        fieldTypes.put("Event.Topic", "keyword");
+        for (String param : indexedParams) {
+            String[] parts = param.trim().split(":", 2);
+            if (!parts[0].isEmpty()) {
+                fieldTypes.put(PARAMS + "." + parts[0], parts.length > 1 ? parts[1].trim() : "keyword");
+            }
+        }
+    }
+
+    private XContentBuilder mapping() throws IOException {
+        Map<String, Object> tree = new LinkedHashMap<>();
+        tree.put("Event", new LinkedHashMap<>(Collections.singletonMap("Params", new LinkedHashMap<>())));
+        for (Map.Entry<String, String> field : fieldTypes.entrySet()) {
+            String[] path = field.getKey().split("\\.");
+            Map<String, Object> node = tree;
+            for (int i = 0; i < path.length - 1; i++) {
+                node = objectNode(node, path[i]);
+            }
+            node.put(path[path.length - 1], field.getValue());
+        }
+
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+        builder.startObject("_meta").field("template_version", TEMPLATE_VERSION).endObject();
+        properties(builder, "", tree);
+        return builder.endObject();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> objectNode(Map<String, Object> parent, String name) {
+        return (Map<String, Object>) parent.computeIfAbsent(name, key -> new LinkedHashMap<String, Object>());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void properties(XContentBuilder builder, String path, Map<String, Object> node) throws IOException {
+        builder.startObject("properties");
+        for (Map.Entry<String, Object> child : node.entrySet()) {
+            String field = path + child.getKey();
+            builder.startObject(child.getKey());
+            if (child.getValue() instanceof String) {
+                builder.field("type", child.getValue());
+                if (FREE_TEXT.contains(field)) {
+                    builder.startObject("fields").startObject("text").field("type", "text").endObject().endObject();
+                }
+            } else {
+                if (PARAMS.equals(field)) {
+                    builder.field("dynamic", false);
+                }
+                properties(builder, field + ".", (Map<String, Object>) child.getValue());
+            }
+            builder.endObject();
+        }
+        builder.endObject();
+    }
+
+    private boolean isUnpartitionedIndex() throws IOException {
+        return client.indices().exists(new GetIndexRequest(EventIndexResolver.ALIAS), RequestOptions.DEFAULT)
+                && !client.indices().existsAlias(new GetAliasesRequest(EventIndexResolver.ALIAS), RequestOptions.DEFAULT);
+    }
+
+    /**
+     * Ids used to be a counter that restarted at 1 on every run. The ids derived from the read
+     * position span the whole positive long range, so practically none of them fall below
+     * {@link Integer#MAX_VALUE}.
+     */
+    private long countLegacyIds() throws IOException {
+        CountRequest request = new CountRequest(EventIndexResolver.ALIAS)
+                .query(QueryBuilders.rangeQuery("id").lte(Integer.MAX_VALUE));
+        return client.count(request, RequestOptions.DEFAULT).getCount();
+    }
+
+    private boolean isManaged(String index) throws IOException {
+        MappingMetaData mapping = client.indices()
+                .getMapping(new GetMappingsRequest().indices(index), RequestOptions.DEFAULT)
+                .mappings().get(index);
+        return mapping != null && mapping.getSourceAsMap().containsKey("_meta");
+    }
+}
@@ -0,0 +1,57 @@
+package com.fidenz.eventsearch.config;
+
+import com.fidenz.eventsearch.entity.Agg;
+import com.fidenz.eventsearch.entity.Node;
+import com.fidenz.eventsearch.graphql.EventDataFetchers;
+import graphql.GraphQL;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import graphql.schema.idl.TypeDefinitionRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+@Configuration
+public class GraphQLConfig {
+
+    @Autowired
+    private EventDataFetchers fetchers;
+
+    /**
+     * Fields not wired here resolve to the entity getter of the same name.
+     */
+    @Bean
+    public GraphQL graphQL() throws IOException {
+        TypeDefinitionRegistry typeRegistry;
+        try (Reader schema = new InputStreamReader(new ClassPathResource("graphql/schema.graphqls").getInputStream(), StandardCharsets.UTF_8)) {
+            typeRegistry = new SchemaParser().parse(schema);
+        }
+        RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+                .type("Query", builder -> builder
+                        .dataFetcher("event", fetchers.event())
+                        .dataFetcher("events", fetchers.events())
+                        .dataFetcher("eventsPage", fetchers.eventsPage())
+                        .dataFetcher("search", fetchers.search())
+                        .dataFetcher("searchPage", fetchers.searchPage())
+                        .dataFetcher("counter", fetchers.counter())
+                        .dataFetcher("cameras", fetchers.cameras())
+                        .dataFetcher("averages", fetchers.averages())
+                        .dataFetcher("countByCategory", fetchers.countByCategory())
+                        .dataFetcher("eventTime", fetchers.eventTime()))
+                .type("Node", builder -> builder
+                        .dataFetcher("ipAddress", env -> env.<Node>getSource().getIPAddress()))
+                .type("Agg", builder -> builder
+                        .dataFetcher("ipAddress", env -> env.<Agg>getSource().getIPAddress()))
+                .type("Event", builder -> builder
+                        .dataFetcher("params", fetchers.params()))
+                .build();
+        return GraphQL.newGraphQL(new SchemaGenerator().makeExecutableSchema(typeRegistry, wiring)).build();
+    }
+}
@@ -0,0 +1,22 @@
+package com.fidenz.eventsearch.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class IngestConfig {
+
+    @Value("${spring.data.elasticsearch.ingest-workers}")
+    private int ingestWorkers;
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService ingestExecutor() {
+        int workers = ingestWorkers > 0 ? ingestWorkers : Runtime.getRuntime().availableProcessors();
+        return Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("ingest-worker-"));
+    }
+}
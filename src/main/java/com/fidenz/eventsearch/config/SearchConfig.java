@@ -0,0 +1,26 @@
+package com.fidenz.eventsearch.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class SearchConfig {
+
+    @Value("${spring.data.elasticsearch.search-workers}")
+    private int searchWorkers;
+
+    /**
+     * Parses search responses for the async path. Only does CPU work, so it needs no more threads
+     * than there are cores, however many searches are in flight.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService searchExecutor() {
+        int workers = searchWorkers > 0 ? searchWorkers : Runtime.getRuntime().availableProcessors();
+        return Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("search-worker-"));
+    }
+}
@@ -1,20 +1,31 @@
 package com.fidenz.eventsearch.controller;
 
 import com.fidenz.eventsearch.dto.*;
+import com.fidenz.eventsearch.presentation.GraphQLPresentationInterface;
 import com.fidenz.eventsearch.presentation.SearchPresentationInterface;
 import com.fidenz.eventsearch.presentation.StatPresentationInterface;
 import com.fidenz.eventsearch.request.*;
+import com.fidenz.eventsearch.service.AutocompleteIndex;
+import com.fidenz.eventsearch.service.BatchServiceInterface;
 import com.fidenz.eventsearch.service.BulkInsertInterface;
+import com.fidenz.eventsearch.service.IngestJobServiceInterface;
+import com.fidenz.eventsearch.service.SearchCache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @RestController
@@ -30,82 +41,198 @@ public class Controller {
     @Autowired
     public SearchPresentationInterface searchPresentation;
 
+    @Autowired
+    public IngestJobServiceInterface ingestJobService;
+
+    @Autowired
+    public SearchCache searchCache;
+
+    @Autowired
+    public BatchServiceInterface batchService;
+
+    @Autowired
+    public GraphQLPresentationInterface graphQLPresentation;
+
+    @Autowired
+    public AutocompleteIndex autocompleteIndex;
+
     @Scheduled(fixedRateString = "${spring.data.elasticsearch.index-update-time}")
+    public void scheduled_ingest() {
+        ingestJobService.trigger();
+    }
+
     @PostMapping("/ingest")
-    public IngestStatusDTO ingest_data() throws IOException, InterruptedException {
-        return bulkService.ingestDataCall();
+    public IngestJobDTO ingest_data(@RequestParam(defaultValue = "false") boolean bulkLoad) {
+        return ingestJobService.trigger(null, bulkLoad);
+    }
+
+    @GetMapping("/ingest")
+    public IngestJobDTO getLatestIngest() {
+        return ingestJobService.getLatestJob();
+    }
+
+    @GetMapping("/ingest/{id}")
+    public ResponseEntity<IngestJobDTO> getIngest(@PathVariable String id) {
+        IngestJobDTO job = ingestJobService.getJob(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    @PostMapping(value = "/ingest/stream", consumes = {"application/x-ndjson", MediaType.APPLICATION_JSON_VALUE})
+    public IngestStatusDTO ingestStream(InputStream body, @RequestParam(defaultValue = "false") boolean bulkLoad) throws IOException {
+        return bulkService.ingestStream(body, bulkLoad);
+    }
+
+    @GetMapping("/ingest/metrics")
+    public IngestMetricsDTO getIngestMetrics() {
+        return bulkService.getIngestMetrics();
     }
 
     @GetMapping("/events")
-    public Iterable<EventDetailDTO> getAllData(@RequestParam(defaultValue = "0") int page) throws IOException {
+    public CompletableFuture<List<EventDetailDTO>> getAllData(@RequestParam(defaultValue = "0") int page) {
         return searchPresentation.findAll(page);
     }
 
+    @GetMapping(value = "/events", params = "raw=true", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<byte[]> getAllDataRaw(@RequestParam(defaultValue = "0") int page) {
+        return searchPresentation.findAllRaw(page);
+    }
+
+    @GetMapping("/events/cursor")
+    public CompletableFuture<EventPageDTO> getEventPage(@RequestParam(required = false) String cursor) {
+        return searchPresentation.findAll(cursor);
+    }
+
+    @PostMapping("/events/ids")
+    public CompletableFuture<List<EventDetailDTO>> getEvents(@RequestBody EventIdsRequest eventIdsRequest) {
+        return searchPresentation.findByIds(eventIdsRequest.getIds());
+    }
+
+    @GetMapping("/events/ids")
+    public CompletableFuture<List<EventDetailDTO>> getEvents(@RequestParam List<String> ids) {
+        return searchPresentation.findByIds(ids);
+    }
+
     @GetMapping("/event/{id}")
-    public EventDetailDTO getEvent(@PathVariable String id) throws IOException {
+    public CompletableFuture<EventDetailDTO> getEvent(@PathVariable String id) {
         return searchPresentation.findById(id);
     }
 
+    @GetMapping(value = "/event/{id}", params = "raw=true", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<byte[]> getEventRaw(@PathVariable String id) {
+        return searchPresentation.findByIdRaw(id);
+    }
+
     @PostMapping("/search")
-    public Iterable<EventDetailDTO> getSearch(@RequestBody SearchEventRequest searchEventRequest) throws IOException {
+    public CompletableFuture<List<EventDetailDTO>> getSearch(@RequestBody SearchEventRequest searchEventRequest) {
         return searchPresentation.search(searchEventRequest.getQuery(), searchEventRequest.getPage(), searchEventRequest.getFilters(), searchEventRequest.getTimeRange());
     }
 
     @GetMapping("/search")
-    public Iterable<EventDetailDTO> getSearch(@RequestParam String query, @RequestParam(defaultValue = "0") int page,  @RequestParam(value = "filters", required = false) String filters, @RequestParam(value = "timeRange", required = false) String timeRange) throws IOException {
+    public CompletableFuture<List<EventDetailDTO>> getSearch(@RequestParam String query, @RequestParam(defaultValue = "0") int page,  @RequestParam(value = "filters", required = false) String filters, @RequestParam(value = "timeRange", required = false) String timeRange) {
         return searchPresentation.search(query, page, this.map(filters), this.setTimeRange(timeRange));
     }
 
+    @PostMapping(value = "/search", params = "raw=true", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<byte[]> getSearchRaw(@RequestBody SearchEventRequest searchEventRequest) {
+        return searchPresentation.searchRaw(searchEventRequest.getQuery(), searchEventRequest.getPage(), searchEventRequest.getFilters(), searchEventRequest.getTimeRange());
+    }
+
+    @GetMapping(value = "/search", params = "raw=true", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<byte[]> getSearchRaw(@RequestParam String query, @RequestParam(defaultValue = "0") int page,  @RequestParam(value = "filters", required = false) String filters, @RequestParam(value = "timeRange", required = false) String timeRange) {
+        return searchPresentation.searchRaw(query, page, this.map(filters), this.setTimeRange(timeRange));
+    }
+
+    @PostMapping("/search/cursor")
+    public CompletableFuture<EventPageDTO> getSearchPage(@RequestBody SearchCursorRequest searchCursorRequest) {
+        return searchPresentation.search(searchCursorRequest.getQuery(), searchCursorRequest.getCursor(), searchCursorRequest.getFilters(), searchCursorRequest.getTimeRange());
+    }
+
+    @GetMapping("/search/cursor")
+    public CompletableFuture<EventPageDTO> getSearchPage(@RequestParam(required = false) String query, @RequestParam(required = false) String cursor, @RequestParam(value = "filters", required = false) String filters, @RequestParam(value = "timeRange", required = false) String timeRange) {
+        return searchPresentation.search(query, cursor, this.map(filters), this.setTimeRange(timeRange));
+    }
+
+    @GetMapping("/search/cache")
+    public SearchCacheDTO getSearchCache() {
+        return searchCache.snapshot();
+    }
+
+    @PostMapping("/search/export")
+    public void exportSearch(@RequestBody SearchEventRequest searchEventRequest, @RequestParam(defaultValue = "ndjson") String format, HttpServletResponse response) throws IOException {
+        TimeRangeDTO timeRange = searchEventRequest.getTimeRange() == null ? new TimeRangeDTO() : searchEventRequest.getTimeRange();
+        this.export(searchEventRequest.getQuery(), searchEventRequest.getFilters(), timeRange, format, response);
+    }
+
+    @GetMapping("/search/export")
+    public void exportSearch(@RequestParam(required = false) String query, @RequestParam(value = "filters", required = false) String filters, @RequestParam(value = "timeRange", required = false) String timeRange, @RequestParam(defaultValue = "ndjson") String format, HttpServletResponse response) throws IOException {
+        this.export(query, this.map(filters), this.setTimeRange(timeRange), format, response);
+    }
+
+    @GetMapping("/autocomplete")
+    public List<CompletionDTO> getCompletions(@RequestParam String field, @RequestParam(defaultValue = "") String prefix, @RequestParam(defaultValue = "10") int size) {
+        return autocompleteIndex.complete(field, prefix, size);
+    }
+
     @PostMapping("/counter")
-    public GenericCounterDTO getCount(@RequestBody CounterRequest counterRequest) throws IOException {
+    public CompletableFuture<GenericCounterDTO> getCount(@RequestBody CounterRequest counterRequest) {
         return statPresentation.getCounter(counterRequest.getFilters(), counterRequest.getTimeRange());
     }
 
     @GetMapping("/counter")
-    public GenericCounterDTO getCount(@RequestParam(value = "filters", required = false) String filters, @RequestParam(value = "timeRange", required = false) String timeRange) throws IOException {
+    public CompletableFuture<GenericCounterDTO> getCount(@RequestParam(value = "filters", required = false) String filters, @RequestParam(value = "timeRange", required = false) String timeRange) {
         return statPresentation.getCounter(this.map(filters), this.setTimeRange(timeRange));
     }
 
     @PostMapping("/cameras")
-    public List<String> getCameras(@RequestBody CameraRequest cameraRequest) throws IOException {
+    public CompletableFuture<List<String>> getCameras(@RequestBody CameraRequest cameraRequest) {
         return statPresentation.getCameras(cameraRequest.getFilters(), cameraRequest.getTimeRange());
     }
 
     @GetMapping("/cameras")
-    public List<String> getCameras(@RequestParam(value = "filters", required = false) String filters, @RequestParam(value = "timeRange", required = false) String timeRange) throws IOException {
+    public CompletableFuture<List<String>> getCameras(@RequestParam(value = "filters", required = false) String filters, @RequestParam(value = "timeRange", required = false) String timeRange) {
         return statPresentation.getCameras(this.map(filters), this.setTimeRange(timeRange));
     }
 
     @PostMapping("/averages")
-    public AverageCounterDTO getAverages(@RequestBody AverageRequest averageRequest) throws IOException {
+    public CompletableFuture<AverageCounterDTO> getAverages(@RequestBody AverageRequest averageRequest) {
         return statPresentation.getAverages(averageRequest.getFilters());
     }
 
     @GetMapping("/averages")
-    public AverageCounterDTO getAverages(@RequestParam(value = "filters", required = false) String filters) throws IOException {
+    public CompletableFuture<AverageCounterDTO> getAverages(@RequestParam(value = "filters", required = false) String filters) {
         return statPresentation.getAverages(this.map(filters));
     }
 
     @PostMapping("/events_by_category")
-    public HashMap<String, Long> getCountByCategory(@RequestBody CountByCategoryRequest countByCategoryRequest) throws IOException {
+    public CompletableFuture<HashMap<String, Long>> getCountByCategory(@RequestBody CountByCategoryRequest countByCategoryRequest) {
         return statPresentation.getCountByCategory(countByCategoryRequest.getFilters(), countByCategoryRequest.getTimeRange());
     }
 
     @GetMapping("/events_by_category")
-    public HashMap<String, Long> getCountByCategory(@RequestParam(value = "filters", required = false) String filters, @RequestParam(value = "timeRange", required = false) String timeRange) throws IOException {
+    public CompletableFuture<HashMap<String, Long>> getCountByCategory(@RequestParam(value = "filters", required = false) String filters, @RequestParam(value = "timeRange", required = false) String timeRange) {
         return statPresentation.getCountByCategory(this.map(filters), this.setTimeRange(timeRange));
     }
 
     @PostMapping("/event_time")
-    public EventTimeRangeDTO getEventTimeRange(@RequestBody EventTimeRangeRequest eventTimeRangeRequest) throws IOException {
+    public CompletableFuture<EventTimeRangeDTO> getEventTimeRange(@RequestBody EventTimeRangeRequest eventTimeRangeRequest) {
         return statPresentation.getEventTimeRange(eventTimeRangeRequest.getEventStart(), eventTimeRangeRequest.getEventEnd(), eventTimeRangeRequest.getFilters(), eventTimeRangeRequest.getTimeRange());
     }
 
     @GetMapping("/event_time")
-    public EventTimeRangeDTO getEventTimeRange(@RequestParam String eventStart, @RequestParam String eventEnd, @RequestParam(value = "filters", required = false) String filters, @RequestParam(value = "timeRange", required = false) String timeRange) throws IOException {
+    public CompletableFuture<EventTimeRangeDTO> getEventTimeRange(@RequestParam String eventStart, @RequestParam String eventEnd, @RequestParam(value = "filters", required = false) String filters, @RequestParam(value = "timeRange", required = false) String timeRange) {
         return statPresentation.getEventTimeRange(eventStart, eventEnd, this.map(filters), this.setTimeRange(timeRange));
     }
 
+    @PostMapping("/batch")
+    public CompletableFuture<List<BatchItemDTO>> getBatch(@RequestBody List<BatchItemRequest> items) {
+        return batchService.execute(items);
+    }
+
+    @PostMapping("/graphql")
+    public CompletableFuture<Map<String, Object>> graphql(@RequestBody GraphQLRequest graphQLRequest) {
+        return graphQLPresentation.execute(graphQLRequest);
+    }
+
     private List<FilterDTO> map(String filters) {
         List<FilterDTO> filterList = new ArrayList<>();
         if (filters == null) {
@@ -141,6 +268,20 @@ public class Controller {
         return filters;
     }
 
+    /**
+     * Written to the servlet response directly, without a content length, so the export goes out
+     * chunked as it is read and is not bound by the async request timeout.
+     */
+    private void export(String query, List<FilterDTO> filters, TimeRangeDTO timeRange, String format, HttpServletResponse response) throws IOException {
+        boolean csv = "csv".equalsIgnoreCase(format);
+        if (!csv && !"ndjson".equalsIgnoreCase(format)) {
+            throw new IllegalArgumentException("Unknown export format " + format + ", expected ndjson or csv");
+        }
+        response.setContentType(csv ? "text/csv;charset=UTF-8" : "application/x-ndjson");
+        response.setHeader("Content-Disposition", "attachment; filename=\"events." + (csv ? "csv" : "ndjson") + "\"");
+        searchPresentation.export(query, filters, timeRange, format, response.getOutputStream());
+    }
+
     private TimeRangeDTO setTimeRange(String time_range){
         TimeRangeDTO timeRangeDTO = new TimeRangeDTO();
         if (time_range == null) {
@@ -0,0 +1,15 @@
+package com.fidenz.eventsearch.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchItemDTO {
+    private String type;
+    private int status;
+    private Object result;
+    private String error;
+}
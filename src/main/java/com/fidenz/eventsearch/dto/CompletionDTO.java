@@ -0,0 +1,13 @@
+package com.fidenz.eventsearch.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CompletionDTO {
+    private String value;
+    private long count;
+}
@@ -2,6 +2,8 @@ package com.fidenz.eventsearch.dto;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import com.fidenz.eventsearch.entity.Agg;
 import com.fidenz.eventsearch.entity.Event;
 import com.fidenz.eventsearch.entity.Node;
@@ -24,9 +26,14 @@ public class EventDetailDTO {
     @JsonProperty("TypeMessage")
     private String TypeMessage;
 
+    /**
+     * Generated ids use 63 bits, past what a JavaScript number holds exactly, so they go out as
+     * strings.
+     */
     @Id
     @JsonProperty("id")
-    private Integer id;
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long id;
 
     @JsonProperty("Node")
     private NodeDTO Node;
@@ -0,0 +1,23 @@
+package com.fidenz.eventsearch.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class EventPageDTO {
+
+    @JsonProperty("Events")
+    private List<EventDetailDTO> Events;
+
+    /**
+     * Pass back to get the next page; {@code null} on the last one.
+     */
+    @JsonProperty("Cursor")
+    private String Cursor;
+}
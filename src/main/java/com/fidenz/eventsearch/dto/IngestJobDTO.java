@@ -0,0 +1,23 @@
+package com.fidenz.eventsearch.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IngestJobDTO {
+    private String id;
+    private String state;
+    private long startedAt;
+    private long finishedAt;
+    private int runs;
+    private String message;
+    private long files;
+    private long lines;
+    private long bytes;
+    private long documents;
+    private long failedDocuments;
+    private double docsPerSecond;
+}
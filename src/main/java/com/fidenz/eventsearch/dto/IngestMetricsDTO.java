@@ -0,0 +1,26 @@
+package com.fidenz.eventsearch.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IngestMetricsDTO {
+    private long bulkRequests;
+    private long failedRequests;
+    private long documents;
+    private long bytes;
+    private long failedDocuments;
+    private long rejectedDocuments;
+    private int inFlightRequests;
+    private double docsPerSecond;
+    private double averageBatchSize;
+    private double averageLatencyMillis;
+    private long maxLatencyMillis;
+    private Map<String, Long> latencyHistogram;
+    private Map<String, Long> failuresByType;
+}
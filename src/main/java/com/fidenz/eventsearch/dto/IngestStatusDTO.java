@@ -10,4 +10,15 @@ import lombok.NoArgsConstructor;
 public class IngestStatusDTO {
     private boolean Status;
     private String Message;
+    private long Documents;
+    private long SkippedDocuments;
+    private long Bytes;
+    private long FailedDocuments;
+    private long ElapsedMillis;
+    private double DocsPerSecond;
+
+    public IngestStatusDTO(boolean status, String message) {
+        this.Status = status;
+        this.Message = message;
+    }
 }
@@ -0,0 +1,18 @@
+package com.fidenz.eventsearch.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SearchCacheDTO {
+    private long generation;
+    private long entries;
+    private long weight;
+    private long hits;
+    private long misses;
+    private double hitRate;
+    private long evictions;
+}
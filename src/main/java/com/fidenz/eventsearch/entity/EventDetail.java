@@ -29,7 +29,7 @@ public class EventDetail {
 
     @Id
     @JsonProperty("id")
-    private Integer id;
+    private Long id;
 
     @JsonProperty("Node")
     private Node Node;
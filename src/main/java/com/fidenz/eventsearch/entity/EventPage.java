@@ -0,0 +1,24 @@
+package com.fidenz.eventsearch.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class EventPage {
+
+    @JsonProperty("Events")
+    private List<EventDetail> Events;
+
+    @JsonProperty("Cursor")
+    private String Cursor;
+}
@@ -0,0 +1,25 @@
+package com.fidenz.eventsearch.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class FileCheckpoint {
+
+    @JsonProperty("Path")
+    private String Path;
+
+    @JsonProperty("FileKey")
+    private String FileKey;
+
+    @JsonProperty("Offset")
+    private long Offset;
+}
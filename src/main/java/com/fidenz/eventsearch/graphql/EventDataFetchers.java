@@ -0,0 +1,154 @@
+package com.fidenz.eventsearch.graphql;
+
+import com.fidenz.eventsearch.dto.FilterDTO;
+import com.fidenz.eventsearch.dto.TimeRangeDTO;
+import com.fidenz.eventsearch.entity.*;
+import com.fidenz.eventsearch.service.AsyncSearchClient;
+import com.fidenz.eventsearch.service.MultiSearchPart;
+import com.fidenz.eventsearch.service.SearchServiceImpl;
+import com.fidenz.eventsearch.service.StatServiceImpl;
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+import org.dataloader.BatchLoader;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderOptions;
+import org.dataloader.DataLoaderRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Resolves the GraphQL query fields. Every field is loaded through one per-request
+ * {@link DataLoader}, which collects the searches of all fields on a level and sends them as a
+ * single msearch, so a query asking for a page of events and three stats costs one round trip.
+ */
+@Component
+public class EventDataFetchers {
+
+    public static final String MULTI_SEARCH = "multiSearch";
+
+    @Value("${spring.data.elasticsearch.batch-max-items}")
+    private int maxBatchSize;
+
+    @Autowired
+    private StatServiceImpl statService;
+
+    @Autowired
+    private SearchServiceImpl searchService;
+
+    @Autowired
+    private AsyncSearchClient asyncClient;
+
+    /**
+     * A new registry for each request. Caching is off: parts are not comparable, and a request
+     * never asks for the same one twice.
+     */
+    public DataLoaderRegistry dataLoaders() {
+        BatchLoader<MultiSearchPart<?>, Object> loader = asyncClient::msearch;
+        DataLoaderRegistry registry = new DataLoaderRegistry();
+        registry.register(MULTI_SEARCH, DataLoader.newDataLoader(loader,
+                DataLoaderOptions.newOptions().setCachingEnabled(false).setMaxBatchSize(maxBatchSize)));
+        return registry;
+    }
+
+    public DataFetcher<CompletableFuture<EventDetail>> event() {
+        return env -> load(env, searchService.findByIdPart(env.getArgument("id"), SourceProjection.includes(env.getSelectionSet(), "")));
+    }
+
+    public DataFetcher<CompletableFuture<List<EventDetail>>> events() {
+        return env -> load(env, searchService.findAllPart(env.<Integer>getArgument("page"), SourceProjection.includes(env.getSelectionSet(), "")));
+    }
+
+    public DataFetcher<CompletableFuture<EventPage>> eventsPage() {
+        return env -> load(env, searchService.findAllPart((String) env.getArgument("cursor"), SourceProjection.includes(env.getSelectionSet(), "events/")));
+    }
+
+    public DataFetcher<CompletableFuture<List<EventDetail>>> search() {
+        return env -> load(env, searchService.searchPart(env.getArgument("query"), env.<Integer>getArgument("page"), filters(env), timeRange(env),
+                SourceProjection.includes(env.getSelectionSet(), "")));
+    }
+
+    public DataFetcher<CompletableFuture<EventPage>> searchPage() {
+        return env -> load(env, searchService.searchPart(env.getArgument("query"), (String) env.getArgument("cursor"), filters(env), timeRange(env),
+                SourceProjection.includes(env.getSelectionSet(), "events/")));
+    }
+
+    public DataFetcher<CompletableFuture<GenericCounter>> counter() {
+        return env -> load(env, statService.counterPart(filters(env), timeRange(env)));
+    }
+
+    public DataFetcher<CompletableFuture<List<String>>> cameras() {
+        return env -> load(env, statService.camerasPart(filters(env), timeRange(env)));
+    }
+
+    public DataFetcher<CompletableFuture<AverageCounter>> averages() {
+        return env -> load(env, statService.averagesPart(filters(env)));
+    }
+
+    public DataFetcher<CompletableFuture<List<Map<String, Object>>>> countByCategory() {
+        return env -> load(env, statService.countByCategoryPart(filters(env), timeRange(env)).map(counts -> {
+            List<Map<String, Object>> categories = new ArrayList<>();
+            counts.forEach((category, count) -> categories.add(entry("category", category, "count", count)));
+            return categories;
+        }));
+    }
+
+    public DataFetcher<CompletableFuture<EventTimeRange>> eventTime() {
+        return env -> load(env, statService.eventTimeRangePart(env.getArgument("eventStart"), env.getArgument("eventEnd"), filters(env), timeRange(env)));
+    }
+
+    public DataFetcher<List<Map<String, Object>>> params() {
+        return env -> {
+            Event event = env.getSource();
+            List<String> names = env.getArgument("names");
+            List<Map<String, Object>> params = new ArrayList<>();
+            if (event.getParams() == null) {
+                return params;
+            }
+            event.getParams().forEach((name, value) -> {
+                if (names == null || names.contains(name)) {
+                    params.add(entry("name", name, "value", value));
+                }
+            });
+            return params;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CompletableFuture<T> load(DataFetchingEnvironment env, MultiSearchPart<T> part) {
+        DataLoader<MultiSearchPart<?>, Object> loader = env.getDataLoader(MULTI_SEARCH);
+        return loader.load(part).thenApply(result -> (T) result);
+    }
+
+    private static List<FilterDTO> filters(DataFetchingEnvironment env) {
+        List<Map<String, Object>> arguments = env.getArgument("filters");
+        List<FilterDTO> filters = new ArrayList<>();
+        if (arguments != null) {
+            for (Map<String, Object> filter : arguments) {
+                filters.add(new FilterDTO((String) filter.get("key"), (String) filter.get("values")));
+            }
+        }
+        return filters;
+    }
+
+    private static TimeRangeDTO timeRange(DataFetchingEnvironment env) {
+        Map<String, Object> argument = env.getArgument("timeRange");
+        if (argument == null) {
+            return new TimeRangeDTO();
+        }
+        return new TimeRangeDTO((String) argument.get("from"), (String) argument.get("to"));
+    }
+
+    private static Map<String, Object> entry(String keyName, Object key, String valueName, Object value) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put(keyName, key);
+        entry.put(valueName, value);
+        return entry;
+    }
+}
@@ -0,0 +1,63 @@
+package com.fidenz.eventsearch.graphql;
+
+import graphql.schema.DataFetchingFieldSelectionSet;
+import graphql.schema.SelectedField;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Turns the fields a GraphQL query selects on events into the {@code _source} includes of the
+ * search that fetches them, so Elasticsearch only loads and returns what the client asked for.
+ */
+public final class SourceProjection {
+
+    private static final Map<String, String> SOURCE_FIELDS = new HashMap<>();
+
+    static {
+        SOURCE_FIELDS.put("timestamp", "Timestamp");
+        SOURCE_FIELDS.put("messageType", "MessageType");
+        SOURCE_FIELDS.put("node/name", "Node.Name");
+        SOURCE_FIELDS.put("node/ipAddress", "Node.IPAddress");
+        SOURCE_FIELDS.put("node/plugin", "Node.Plugin");
+        SOURCE_FIELDS.put("agg/id", "Agg.Id");
+        SOURCE_FIELDS.put("agg/name", "Agg.Name");
+        SOURCE_FIELDS.put("agg/ipAddress", "Agg.IPAddress");
+        SOURCE_FIELDS.put("event/topic", "Event.Topic");
+    }
+
+    private SourceProjection() {
+    }
+
+    /**
+     * @param prefix path of the events within the selection, "" when they are the selected type
+     *               itself or "events/" for a page of them
+     * @return the source fields to include; always at least {@code id}, since an empty include
+     * list would fetch the whole document
+     */
+    @SuppressWarnings("unchecked")
+    public static String[] includes(DataFetchingFieldSelectionSet selectionSet, String prefix) {
+        Set<String> includes = new TreeSet<>();
+        includes.add("id");
+        for (SelectedField field : selectionSet.getFields()) {
+            if (!field.getQualifiedName().startsWith(prefix)) {
+                continue;
+            }
+            String path = field.getQualifiedName().substring(prefix.length());
+            if (SOURCE_FIELDS.containsKey(path)) {
+                includes.add(SOURCE_FIELDS.get(path));
+            } else if (path.equals("event/params")) {
+                List<String> names = (List<String>) field.getArguments().get("names");
+                if (names == null) {
+                    includes.add("Event.Params");
+                } else {
+                    names.forEach(name -> includes.add("Event.Params." + name));
+                }
+            }
+        }
+        return includes.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,100 @@
+package com.fidenz.eventsearch.listener;
+
+import com.fidenz.eventsearch.service.IngestJobServiceInterface;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Starts an ingest as soon as collector files are created or appended to, instead of waiting for
+ * the next scheduled scan. Events are debounced: a burst of writes is collected until the
+ * directory has been quiet for the debounce interval, or for at most four intervals under a
+ * steady stream of writes, and then ingested as one job covering only the files that changed.
+ * The scheduled scan keeps running as a fallback for anything the watch misses.
+ */
+@Component
+@Slf4j
+public class CollectorWatchListener {
+
+    @Value("${spring.data.elasticsearch.collector-path}")
+    private String collectorPath;
+
+    @Value("${spring.data.elasticsearch.collector-watch}")
+    private boolean enabled;
+
+    @Value("${spring.data.elasticsearch.collector-watch-debounce}")
+    private long debounce;
+
+    @Autowired
+    private IngestJobServiceInterface ingestJobService;
+
+    private WatchService watchService;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Path directory = Paths.get(collectorPath).toAbsolutePath().normalize();
+        if (!Files.isDirectory(directory)) {
+            log.warn("{} does not exist, collector watch disabled", directory);
+            return;
+        }
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        Thread thread = new Thread(() -> watch(directory), "collector-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void watch(Path directory) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<Path> changed = new HashSet<>();
+                boolean overflow = collect(directory, key, changed);
+                long deadline = System.currentTimeMillis() + debounce * 4;
+                while (System.currentTimeMillis() < deadline
+                        && (key = watchService.poll(debounce, TimeUnit.MILLISECONDS)) != null) {
+                    overflow |= collect(directory, key, changed);
+                }
+                ingestJobService.trigger(overflow ? null : changed);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            log.debug("Collector watch stopped");
+        }
+    }
+
+    private boolean collect(Path directory, WatchKey key, Set<Path> changed) {
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+            } else {
+                changed.add(directory.resolve((Path) event.context()));
+            }
+        }
+        key.reset();
+        return overflow;
+    }
+}
@@ -1,33 +1,169 @@
 package com.fidenz.eventsearch.listener;
 
+import com.fidenz.eventsearch.service.BulkTuner;
+import com.fidenz.eventsearch.service.EventLookup;
+import com.fidenz.eventsearch.service.FingerprintIndex;
+import com.fidenz.eventsearch.service.IngestMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkProcessor;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.rest.RestStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Slf4j
 public class EventDataIngestListener implements BulkProcessor.Listener {
 
+    private static final Pattern ERROR_TYPE = Pattern.compile("type=([a-z_]+)");
+
+    private final AtomicBoolean failed = new AtomicBoolean(false);
+    private final AtomicBoolean retryable = new AtomicBoolean(false);
+    private final Map<Long, Long> startTimes = new ConcurrentHashMap<>();
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder failedDocuments = new LongAdder();
+    private final BulkTuner bulkTuner;
+    private final IngestMetrics ingestMetrics;
+    private final FingerprintIndex fingerprintIndex;
+    private final EventLookup eventLookup;
+
+    public EventDataIngestListener(BulkTuner bulkTuner, IngestMetrics ingestMetrics, FingerprintIndex fingerprintIndex, EventLookup eventLookup) {
+        this.bulkTuner = bulkTuner;
+        this.ingestMetrics = ingestMetrics;
+        this.fingerprintIndex = fingerprintIndex;
+        this.eventLookup = eventLookup;
+    }
+
     @Override
     public void beforeBulk(long l, BulkRequest bulkRequest) {
-        log.info("Updating Started");
+        startTimes.put(l, System.nanoTime());
+        ingestMetrics.onBulkStarted();
+        log.debug("Updating Started");
     }
 
     @Override
     public void afterBulk(long l, BulkRequest bulkRequest, BulkResponse bulkResponse) {
+        long latency = elapsedMillis(l);
+        invalidate(bulkRequest);
+        int rejections = 0;
+        int itemFailures = 0;
         if (bulkResponse.hasFailures()) {
-            for (BulkItemResponse bulkItemResponse : bulkResponse) {
-                if (bulkItemResponse.isFailed()) {
-                    BulkItemResponse.Failure failure = bulkItemResponse.getFailure();
+            failed.set(true);
+        }
+        for (BulkItemResponse bulkItemResponse : bulkResponse) {
+            if (bulkItemResponse.isFailed()) {
+                BulkItemResponse.Failure failure = bulkItemResponse.getFailure();
+                boolean rejected = failure.getStatus() == RestStatus.TOO_MANY_REQUESTS;
+                if (rejected) {
+                    rejections++;
+                }
+                itemFailures++;
+                ingestMetrics.onDocumentFailed(errorType(failure.getCause()), rejected);
+                if (rejected || failure.getStatus().getStatus() >= 500) {
+                    retryable.set(true);
                     log.info("Error ", failure.getCause());
+                } else {
+                    log.warn("Skipping event {}, {} rejected it: {}", failure.getId(), failure.getIndex(), failure.getMessage());
                 }
+            } else {
+                remember(bulkRequest.requests().get(bulkItemResponse.getItemId()));
             }
         }
+        documents.add(bulkRequest.numberOfActions() - itemFailures);
+        failedDocuments.add(itemFailures);
+        bytes.add(bulkRequest.estimatedSizeInBytes());
+        ingestMetrics.onBulkCompleted(bulkRequest.numberOfActions(), itemFailures, bulkRequest.estimatedSizeInBytes(), latency);
+        bulkTuner.onBulk(bulkRequest.numberOfActions(), latency, rejections);
     }
 
     @Override
     public void afterBulk(long l, BulkRequest bulkRequest, Throwable throwable) {
+        startTimes.remove(l);
+        invalidate(bulkRequest);
+        failed.set(true);
+        retryable.set(true);
+        failedDocuments.add(bulkRequest.numberOfActions());
+        ingestMetrics.onBulkFailed(errorType(throwable));
+        bulkTuner.onBulkFailure();
         log.error("error encountered", throwable);
     }
+
+    public boolean hasFailures() {
+        return failed.get();
+    }
+
+    /**
+     * Whether some document failed in a way that sending it again may fix: the whole request
+     * failed, or an item was rejected under load or hit an unavailable shard. Documents rejected
+     * for their content, such as a mapping conflict, fail the same way every time and do not count.
+     */
+    public boolean hasRetryableFailures() {
+        return retryable.get();
+    }
+
+    public long getDocuments() {
+        return documents.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getFailedDocuments() {
+        return failedDocuments.sum();
+    }
+
+    private void remember(DocWriteRequest<?> request) {
+        if (request instanceof IndexRequest) {
+            BytesRef source = ((IndexRequest) request).source().toBytesRef();
+            fingerprintIndex.record(Long.parseLong(request.id()),
+                    fingerprintIndex.fingerprint(request.index(), source.bytes, source.offset, source.length));
+        }
+    }
+
+    /**
+     * Every id in the request, written or not: a failed request may still have been partly applied.
+     */
+    private void invalidate(BulkRequest bulkRequest) {
+        List<String> ids = new ArrayList<>(bulkRequest.numberOfActions());
+        for (DocWriteRequest<?> request : bulkRequest.requests()) {
+            ids.add(request.id());
+        }
+        eventLookup.invalidate(ids);
+    }
+
+    private long elapsedMillis(long executionId) {
+        Long start = startTimes.remove(executionId);
+        return start == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Failures parsed from a REST response carry the server-side type only in their message,
+     * e.g. "Elasticsearch exception [type=mapper_parsing_exception, reason=...]".
+     */
+    private String errorType(Throwable cause) {
+        if (cause == null) {
+            return "unknown";
+        }
+        if (cause.getMessage() != null) {
+            Matcher matcher = ERROR_TYPE.matcher(cause.getMessage());
+            if (matcher.find()) {
+                return matcher.group(1);
+            }
+        }
+        return cause.getClass().getSimpleName();
+    }
 }
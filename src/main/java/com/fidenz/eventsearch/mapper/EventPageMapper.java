@@ -0,0 +1,13 @@
+package com.fidenz.eventsearch.mapper;
+
+import com.fidenz.eventsearch.dto.EventPageDTO;
+import com.fidenz.eventsearch.entity.EventPage;
+import org.mapstruct.Mapper;
+import org.mapstruct.factory.Mappers;
+
+@Mapper(uses = EventDetailMapper.class)
+public interface EventPageMapper {
+    EventPageMapper INSTANCE = Mappers.getMapper( EventPageMapper.class );
+
+    EventPageDTO eventPageToEventPageDTO(EventPage eventPage);
+}
@@ -0,0 +1,34 @@
+package com.fidenz.eventsearch.presentation;
+
+import com.fidenz.eventsearch.graphql.EventDataFetchers;
+import com.fidenz.eventsearch.request.GraphQLRequest;
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+@Component
+public class GraphQLPresentationImpl implements GraphQLPresentationInterface {
+
+    @Autowired
+    private GraphQL graphQL;
+
+    @Autowired
+    private EventDataFetchers fetchers;
+
+    @Override
+    public CompletableFuture<Map<String, Object>> execute(GraphQLRequest request) {
+        ExecutionInput input = ExecutionInput.newExecutionInput()
+                .query(request.getQuery())
+                .operationName(request.getOperationName())
+                .variables(request.getVariables() == null ? new HashMap<>() : request.getVariables())
+                .dataLoaderRegistry(fetchers.dataLoaders())
+                .build();
+        return graphQL.executeAsync(input).thenApply(ExecutionResult::toSpecification);
+    }
+}
@@ -0,0 +1,10 @@
+package com.fidenz.eventsearch.presentation;
+
+import com.fidenz.eventsearch.request.GraphQLRequest;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public interface GraphQLPresentationInterface {
+    CompletableFuture<Map<String, Object>> execute(GraphQLRequest request);
+}
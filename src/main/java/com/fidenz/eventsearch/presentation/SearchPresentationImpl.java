@@ -1,15 +1,19 @@
 package com.fidenz.eventsearch.presentation;
 
 import com.fidenz.eventsearch.dto.EventDetailDTO;
+import com.fidenz.eventsearch.dto.EventPageDTO;
 import com.fidenz.eventsearch.dto.FilterDTO;
 import com.fidenz.eventsearch.dto.TimeRangeDTO;
 import com.fidenz.eventsearch.mapper.EventDetailMapper;
+import com.fidenz.eventsearch.mapper.EventPageMapper;
 import com.fidenz.eventsearch.service.SearchServiceInterface;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Component
 public class SearchPresentationImpl implements SearchPresentationInterface{
@@ -18,18 +22,60 @@ public class SearchPresentationImpl implements SearchPresentationInterface{
     private SearchServiceInterface searchServiceInterface;
 
     @Override
-    public List<EventDetailDTO> search(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
-        return EventDetailMapper.INSTANCE.toListDTO(this.searchServiceInterface.search(query, page, filters, timeRangeDTO));
+    public CompletableFuture<List<EventDetailDTO>> search(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return this.searchServiceInterface.searchAsync(query, page, filters, timeRangeDTO).thenApply(EventDetailMapper.INSTANCE::toListDTO);
     }
 
     @Override
-    public EventDetailDTO findById(String id) throws IOException {
-        return EventDetailMapper.INSTANCE.eventDetailToEventDetailDto(this.searchServiceInterface.findById(id));
+    public CompletableFuture<EventDetailDTO> findById(String id) {
+        return this.searchServiceInterface.findByIdAsync(id).thenApply(EventDetailMapper.INSTANCE::eventDetailToEventDetailDto);
     }
 
     @Override
-    public List<EventDetailDTO> findAll(int page) throws IOException {
-        return EventDetailMapper.INSTANCE.toListDTO(this.searchServiceInterface.findAll(page));
+    public CompletableFuture<List<EventDetailDTO>> findAll(int page) {
+        return this.searchServiceInterface.findAllAsync(page).thenApply(EventDetailMapper.INSTANCE::toListDTO);
+    }
+
+    @Override
+    public CompletableFuture<List<EventDetailDTO>> findByIds(List<String> ids) {
+        return this.searchServiceInterface.findByIdsAsync(ids).thenApply(EventDetailMapper.INSTANCE::toListDTO);
+    }
+
+    /**
+     * Raw responses are the stored documents as Elasticsearch returned them, so they skip the
+     * mapping to DTOs and keep the stored field names.
+     */
+    @Override
+    public CompletableFuture<byte[]> findByIdRaw(String id) {
+        return this.searchServiceInterface.findByIdRawAsync(id);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> findAllRaw(int page) {
+        return this.searchServiceInterface.findAllRawAsync(page);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> searchRaw(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return this.searchServiceInterface.searchRawAsync(query, page, filters, timeRangeDTO);
+    }
+
+    @Override
+    public CompletableFuture<EventPageDTO> findAll(String cursor) {
+        return this.searchServiceInterface.findAllAsync(cursor).thenApply(EventPageMapper.INSTANCE::eventPageToEventPageDTO);
+    }
+
+    @Override
+    public CompletableFuture<EventPageDTO> search(String query, String cursor, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return this.searchServiceInterface.searchAsync(query, cursor, filters, timeRangeDTO).thenApply(EventPageMapper.INSTANCE::eventPageToEventPageDTO);
+    }
+
+    /**
+     * Streams straight from the service: an export is never mapped to DTOs.
+     */
+    @Override
+    public void export(String query, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO, String format, OutputStream out) throws IOException {
+        this.searchServiceInterface.export(query, filters, timeRangeDTO, format, out);
     }
 
 
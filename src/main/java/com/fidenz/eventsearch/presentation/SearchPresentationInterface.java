@@ -1,15 +1,25 @@
 package com.fidenz.eventsearch.presentation;
 
 import com.fidenz.eventsearch.dto.EventDetailDTO;
+import com.fidenz.eventsearch.dto.EventPageDTO;
 import com.fidenz.eventsearch.dto.FilterDTO;
 import com.fidenz.eventsearch.dto.TimeRangeDTO;
 import com.fidenz.eventsearch.entity.EventDetail;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface SearchPresentationInterface {
-    List<EventDetailDTO> search(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException;
-    EventDetailDTO findById(String id) throws IOException;
-    List<EventDetailDTO> findAll(int page) throws IOException;
+    CompletableFuture<List<EventDetailDTO>> search(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO);
+    CompletableFuture<EventDetailDTO> findById(String id);
+    CompletableFuture<List<EventDetailDTO>> findAll(int page);
+    CompletableFuture<List<EventDetailDTO>> findByIds(List<String> ids);
+    CompletableFuture<byte[]> findByIdRaw(String id);
+    CompletableFuture<byte[]> findAllRaw(int page);
+    CompletableFuture<byte[]> searchRaw(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO);
+    CompletableFuture<EventPageDTO> findAll(String cursor);
+    CompletableFuture<EventPageDTO> search(String query, String cursor, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO);
+    void export(String query, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO, String format, OutputStream out) throws IOException;
 }
@@ -8,9 +8,9 @@ import com.fidenz.eventsearch.service.StatServiceInterface;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Component
 public class StatPresentationImpl implements StatPresentationInterface{
@@ -18,27 +18,27 @@ public class StatPresentationImpl implements StatPresentationInterface{
     @Autowired
     private StatServiceInterface statService;
 
-    public AverageCounterDTO getAverages(List<FilterDTO> filters) throws IOException {
-        return AverageCounterMapper.INSTANCE.averageCounterToAverageCounterDTO(this.statService.findAverages(filters));
+    public CompletableFuture<AverageCounterDTO> getAverages(List<FilterDTO> filters) {
+        return this.statService.findAveragesAsync(filters).thenApply(AverageCounterMapper.INSTANCE::averageCounterToAverageCounterDTO);
     }
 
     @Override
-    public GenericCounterDTO getCounter(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
-        return GenericCounterMapper.INSTANCE.genericCounterToGenericCounterDTO(this.statService.findCounter(filters, timeRangeDTO));
+    public CompletableFuture<GenericCounterDTO> getCounter(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return this.statService.findCounterAsync(filters, timeRangeDTO).thenApply(GenericCounterMapper.INSTANCE::genericCounterToGenericCounterDTO);
     }
 
     @Override
-    public List<String> getCameras(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
-        return this.statService.findCameras(filters, timeRangeDTO);
+    public CompletableFuture<List<String>> getCameras(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return this.statService.findCamerasAsync(filters, timeRangeDTO);
     }
 
     @Override
-    public HashMap<String, Long> getCountByCategory(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
-        return this.statService.findCountByCategory(filters, timeRangeDTO);
+    public CompletableFuture<HashMap<String, Long>> getCountByCategory(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return this.statService.findCountByCategoryAsync(filters, timeRangeDTO);
     }
 
     @Override
-    public EventTimeRangeDTO getEventTimeRange(String eventStart, String eventEnd, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
-        return EventTimeRangeMapper.INSTANCE.eventTimeRangeToEventTimeRangeDTO(this.statService.findEventTimeRange(eventStart, eventEnd, filters, timeRangeDTO));
+    public CompletableFuture<EventTimeRangeDTO> getEventTimeRange(String eventStart, String eventEnd, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return this.statService.findEventTimeRangeAsync(eventStart, eventEnd, filters, timeRangeDTO).thenApply(EventTimeRangeMapper.INSTANCE::eventTimeRangeToEventTimeRangeDTO);
     }
 }
@@ -2,14 +2,14 @@ package com.fidenz.eventsearch.presentation;
 
 import com.fidenz.eventsearch.dto.*;
 
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface StatPresentationInterface {
-    AverageCounterDTO getAverages(List<FilterDTO> filters) throws IOException;
-    GenericCounterDTO getCounter(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException;
-    List<String> getCameras(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException;
-    HashMap<String, Long> getCountByCategory(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException;
-    EventTimeRangeDTO getEventTimeRange(String event_start, String event_end, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException;
+    CompletableFuture<AverageCounterDTO> getAverages(List<FilterDTO> filters);
+    CompletableFuture<GenericCounterDTO> getCounter(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO);
+    CompletableFuture<List<String>> getCameras(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO);
+    CompletableFuture<HashMap<String, Long>> getCountByCategory(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO);
+    CompletableFuture<EventTimeRangeDTO> getEventTimeRange(String event_start, String event_end, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO);
 }
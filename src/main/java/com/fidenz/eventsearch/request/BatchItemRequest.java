@@ -0,0 +1,20 @@
+package com.fidenz.eventsearch.request;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One lookup in a batch. {@code type} names the endpoint it stands in for ("search", "counter",
+ * "events_by_category", ...) and {@code request} is the body that endpoint takes.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchItemRequest {
+
+    private String type;
+
+    private JsonNode request;
+}
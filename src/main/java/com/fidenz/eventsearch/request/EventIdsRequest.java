@@ -0,0 +1,15 @@
+package com.fidenz.eventsearch.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class EventIdsRequest {
+    private List<String> ids = new ArrayList<>();
+}
@@ -0,0 +1,20 @@
+package com.fidenz.eventsearch.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class GraphQLRequest {
+
+    private String query;
+
+    private String operationName;
+
+    private Map<String, Object> variables = new HashMap<>();
+}
@@ -0,0 +1,23 @@
+package com.fidenz.eventsearch.request;
+
+import com.fidenz.eventsearch.dto.FilterDTO;
+import com.fidenz.eventsearch.dto.TimeRangeDTO;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SearchCursorRequest {
+
+    private List<FilterDTO> filters = new ArrayList<>();
+    private TimeRangeDTO timeRange = new TimeRangeDTO();
+
+    private String query;
+
+    private String cursor;
+}
@@ -0,0 +1,150 @@
+package com.fidenz.eventsearch.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountRequest;
+import org.elasticsearch.client.core.CountResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Non-blocking counterparts of the client's search, msearch, count and mget calls. No thread
+ * waits for Elasticsearch: responses arrive on the HTTP client's I/O threads, which must not be
+ * held up parsing hits, so each one is handed to the search executor and parsed there.
+ */
+@Component
+@Slf4j
+public class AsyncSearchClient {
+
+    @FunctionalInterface
+    public interface ResponseParser<T, R> {
+        R parse(T response) throws IOException;
+    }
+
+    @Qualifier("createInstance")
+    @Autowired
+    private RestHighLevelClient client;
+
+    @Autowired
+    private ExecutorService searchExecutor;
+
+    public <R> CompletableFuture<R> search(SearchRequest request, ResponseParser<SearchResponse, R> parser) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        client.searchAsync(request, RequestOptions.DEFAULT, listener(future, parser));
+        return future;
+    }
+
+    public <R> CompletableFuture<R> msearch(MultiSearchRequest request, ResponseParser<MultiSearchResponse, R> parser) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        client.msearchAsync(request, RequestOptions.DEFAULT, listener(future, parser));
+        return future;
+    }
+
+    public <R> CompletableFuture<R> mget(MultiGetRequest request, ResponseParser<MultiGetResponse, R> parser) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        client.mgetAsync(request, RequestOptions.DEFAULT, listener(future, parser));
+        return future;
+    }
+
+    /**
+     * Sends the searches of every part as one msearch. Each part's entry in the result is what it
+     * parsed to, or the exception it failed with, so one failing part does not fail the others.
+     */
+    public CompletableFuture<List<Object>> msearch(List<? extends MultiSearchPart<?>> parts) {
+        if (parts.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        MultiSearchRequest request = new MultiSearchRequest();
+        parts.forEach(part -> part.requests().forEach(request::add));
+        return msearch(request, response -> {
+            MultiSearchResponse.Item[] items = response.getResponses();
+            List<Object> results = new ArrayList<>(parts.size());
+            int offset = 0;
+            for (MultiSearchPart<?> part : parts) {
+                int size = part.requests().size();
+                results.add(parse(part, items, offset, size));
+                offset += size;
+            }
+            return results;
+        });
+    }
+
+    public <R> CompletableFuture<R> count(CountRequest request, ResponseParser<CountResponse, R> parser) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        client.countAsync(request, RequestOptions.DEFAULT, listener(future, parser));
+        return future;
+    }
+
+    /**
+     * Blocks for a future from this class, rethrowing what it failed with as the synchronous call
+     * would have.
+     */
+    public static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for Elasticsearch");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static Object parse(MultiSearchPart<?> part, MultiSearchResponse.Item[] items, int offset, int size) {
+        List<SearchResponse> responses = new ArrayList<>(size);
+        for (int i = offset; i < offset + size; i++) {
+            if (items[i].isFailure()) {
+                return items[i].getFailure();
+            }
+            responses.add(items[i].getResponse());
+        }
+        try {
+            return part.parse(responses);
+        } catch (Exception e) {
+            log.warn("Failed to read a multi search response", e);
+            return e;
+        }
+    }
+
+    private <T, R> ActionListener<T> listener(CompletableFuture<R> future, ResponseParser<T, R> parser) {
+        return ActionListener.wrap(
+                response -> {
+                    try {
+                        searchExecutor.execute(() -> {
+                            try {
+                                future.complete(parser.parse(response));
+                            } catch (Exception e) {
+                                future.completeExceptionally(e);
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        future.completeExceptionally(e);
+                    }
+                },
+                future::completeExceptionally);
+    }
+}
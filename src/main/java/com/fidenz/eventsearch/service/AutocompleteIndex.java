@@ -0,0 +1,227 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.dto.CompletionDTO;
+import com.fidenz.eventsearch.entity.EventDetail;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregation;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.TermsValuesSourceBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Completions for the filter boxes, answered from memory without touching Elasticsearch. Each
+ * field is a {@link PrefixIndex} of its distinct values and their document counts. Ingest records
+ * the values of every document it sends, and the recorded values are merged in when the run ends.
+ * A periodic rebuild from composite aggregations corrects the counts, which drift in between:
+ * a rewritten or rejected document is still counted once more.
+ */
+@Component
+@Slf4j
+public class AutocompleteIndex {
+
+    /**
+     * Completable fields, by the name clients use, and the document field each one reads.
+     */
+    private static final Map<String, String> FIELDS = new LinkedHashMap<>();
+
+    static {
+        FIELDS.put("deviceName", "Event.Params.DeviceName");
+        FIELDS.put("category", "Event.Params.Category");
+        FIELDS.put("aggName", "Agg.Name");
+    }
+
+    private static final int MAX_COMPLETIONS = 100;
+
+    private static final int PAGE_SIZE = 5000;
+
+    private static final long MIN_RETRY_DELAY = 1000;
+
+    /**
+     * Distinct values kept per field; the least frequent go first.
+     */
+    @Value("${spring.data.elasticsearch.autocomplete-max-values}")
+    private int maxValues;
+
+    @Value("${spring.data.elasticsearch.autocomplete-rebuild-interval}")
+    private long rebuildInterval;
+
+    @Autowired
+    private AsyncSearchClient asyncClient;
+
+    @Autowired
+    private EventIndexResolver indexResolver;
+
+    private final Map<String, PrefixIndex> indices = new ConcurrentHashMap<>();
+
+    private final Map<String, ConcurrentHashMap<String, Long>> recorded = new HashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("autocomplete-"));
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private volatile long retryDelay;
+
+    public AutocompleteIndex() {
+        for (String field : FIELDS.keySet()) {
+            indices.put(field, PrefixIndex.EMPTY);
+            recorded.put(field, new ConcurrentHashMap<>());
+        }
+    }
+
+    public List<CompletionDTO> complete(String field, String prefix, int size) {
+        PrefixIndex index = indices.get(field);
+        if (index == null) {
+            throw new IllegalArgumentException("Cannot complete " + field + ", only " + FIELDS.keySet());
+        }
+        return index.complete(prefix == null ? "" : prefix, Math.max(1, Math.min(size, MAX_COMPLETIONS)));
+    }
+
+    /**
+     * Called from the ingest workers for every document sent to Elasticsearch.
+     */
+    public void record(EventDetail eventDetail) {
+        if (eventDetail.getEvent() != null && eventDetail.getEvent().getParams() != null) {
+            record("deviceName", eventDetail.getEvent().getParams().get("DeviceName"));
+            record("category", eventDetail.getEvent().getParams().get("Category"));
+        }
+        if (eventDetail.getAgg() != null) {
+            record("aggName", eventDetail.getAgg().getName());
+        }
+    }
+
+    @EventListener
+    public void onIndexChanged(IndexChangedEvent event) {
+        merge();
+    }
+
+    /**
+     * Each removal takes a value's count atomically, so values recorded meanwhile are kept for the
+     * next merge rather than lost.
+     */
+    synchronized void merge() {
+        recorded.forEach((field, values) -> {
+            Map<String, Long> delta = new HashMap<>();
+            for (String value : values.keySet()) {
+                Long count = values.remove(value);
+                if (count != null) {
+                    delta.put(value, count);
+                }
+            }
+            indices.put(field, indices.get(field).merge(delta, maxValues));
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    /**
+     * Also runs once the application is ready, and again after a failure with a growing delay.
+     * Values recorded but not yet merged may already be in what the aggregation counted, so until
+     * the next rebuild they can count twice.
+     */
+    @Scheduled(fixedRateString = "${spring.data.elasticsearch.autocomplete-rebuild-interval}",
+            initialDelayString = "${spring.data.elasticsearch.autocomplete-rebuild-interval}")
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        Map<String, CompletableFuture<PrefixIndex>> rebuilt = new LinkedHashMap<>();
+        FIELDS.forEach((field, source) -> rebuilt.put(field, valueCounts(field, source, new HashMap<>(), null)
+                .thenApply(valueCounts -> PrefixIndex.of(valueCounts, maxValues))));
+
+        CompletableFuture.allOf(rebuilt.values().toArray(new CompletableFuture[0])).whenComplete((done, error) -> {
+            rebuilding.set(false);
+            if (error != null) {
+                retryDelay = retryDelay == 0 ? MIN_RETRY_DELAY : Math.min(retryDelay * 2, rebuildInterval);
+                log.warn("Failed to rebuild the autocomplete index, keeping the current one and retrying in {} ms",
+                        retryDelay, error);
+                scheduler.schedule(this::rebuild, retryDelay, TimeUnit.MILLISECONDS);
+                return;
+            }
+            retryDelay = 0;
+            synchronized (this) {
+                rebuilt.forEach((field, index) -> indices.put(field, index.join()));
+            }
+            log.debug("Rebuilt the autocomplete index");
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Pages through the distinct values of a field with a composite aggregation, which, unlike a
+     * terms aggregation sized for every value, stays under {@code search.max_buckets}. Each value
+     * comes up once, so trimming to the most frequent between pages loses nothing that would have
+     * been kept.
+     */
+    private CompletableFuture<Map<String, Long>> valueCounts(String field, String source, Map<String, Long> valueCounts,
+                                                             Map<String, Object> after) {
+        CompositeAggregationBuilder composite = AggregationBuilders.composite(field, Collections.singletonList(
+                new TermsValuesSourceBuilder(field).field(indexResolver.keywordField(source)))).size(PAGE_SIZE);
+        if (after != null) {
+            composite.aggregateAfter(after);
+        }
+        SearchRequest searchRequest = new SearchRequest(EventIndexResolver.ALIAS);
+        searchRequest.indicesOptions(EventIndexResolver.SEARCH_OPTIONS);
+        searchRequest.source(new SearchSourceBuilder().size(0).aggregation(composite));
+
+        return asyncClient.search(searchRequest, searchResponse -> searchResponse.getAggregations() == null
+                ? null : searchResponse.getAggregations().<CompositeAggregation>get(field)).thenCompose(page -> {
+            if (page == null) {
+                return CompletableFuture.completedFuture(valueCounts);
+            }
+            for (CompositeAggregation.Bucket bucket : page.getBuckets()) {
+                valueCounts.put(String.valueOf(bucket.getKey().get(field)), bucket.getDocCount());
+            }
+            if (valueCounts.size() > 2 * maxValues) {
+                trim(valueCounts);
+            }
+            if (page.getBuckets().size() < PAGE_SIZE || page.afterKey() == null) {
+                return CompletableFuture.completedFuture(valueCounts);
+            }
+            return valueCounts(field, source, valueCounts, page.afterKey());
+        });
+    }
+
+    private void trim(Map<String, Long> valueCounts) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(valueCounts.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        for (Map.Entry<String, Long> entry : entries.subList(maxValues, entries.size())) {
+            valueCounts.remove(entry.getKey());
+        }
+    }
+
+    private void record(String field, Object value) {
+        if (value != null) {
+            recorded.get(field).merge(value.toString(), 1L, Long::sum);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.fidenz.eventsearch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fidenz.eventsearch.dto.BatchItemDTO;
+import com.fidenz.eventsearch.dto.TimeRangeDTO;
+import com.fidenz.eventsearch.mapper.AverageCounterMapper;
+import com.fidenz.eventsearch.mapper.EventDetailMapper;
+import com.fidenz.eventsearch.mapper.EventPageMapper;
+import com.fidenz.eventsearch.mapper.EventTimeRangeMapper;
+import com.fidenz.eventsearch.mapper.GenericCounterMapper;
+import com.fidenz.eventsearch.request.*;
+import org.elasticsearch.ElasticsearchException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs the lookups behind several endpoints as one msearch, so a view that needs a page of events
+ * and a handful of stats costs one round trip. Each item gets its own status: one that cannot be
+ * read, is incomplete or fails in Elasticsearch is reported in place without failing the rest. Items go straight
+ * to Elasticsearch, past the search cache and request coalescing.
+ */
+@Service
+public class BatchServiceImpl implements BatchServiceInterface {
+
+    @Value("${spring.data.elasticsearch.batch-max-items}")
+    private int maxItems;
+
+    @Autowired
+    private StatServiceImpl statService;
+
+    @Autowired
+    private SearchServiceImpl searchService;
+
+    @Autowired
+    private AsyncSearchClient asyncClient;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    public CompletableFuture<List<BatchItemDTO>> execute(List<BatchItemRequest> items) {
+        if (items.size() > maxItems) {
+            throw new IllegalArgumentException("A batch holds at most " + maxItems + " items, got " + items.size());
+        }
+        List<BatchItemDTO> results = new ArrayList<>(items.size());
+        List<MultiSearchPart<?>> parts = new ArrayList<>(items.size());
+        List<BatchItemDTO> sent = new ArrayList<>(items.size());
+        for (BatchItemRequest item : items) {
+            BatchItemDTO result = new BatchItemDTO(item == null ? null : item.getType(), HttpStatus.OK.value(), null, null);
+            try {
+                if (item == null) {
+                    throw new IllegalArgumentException("Missing batch item");
+                }
+                parts.add(part(item.getType(), item.getRequest()));
+                sent.add(result);
+            } catch (RuntimeException e) {
+                result.setStatus(HttpStatus.BAD_REQUEST.value());
+                result.setError(e.getMessage());
+            }
+            results.add(result);
+        }
+        return asyncClient.msearch(parts).thenApply(values -> {
+            for (int i = 0; i < values.size(); i++) {
+                complete(sent.get(i), values.get(i));
+            }
+            return results;
+        });
+    }
+
+    private MultiSearchPart<?> part(String type, JsonNode request) {
+        if (type == null) {
+            throw new IllegalArgumentException("Missing batch item type");
+        }
+        switch (type) {
+            case "event":
+                return searchService.findByIdPart(read(request, JsonNode.class).path("id").asText(), null)
+                        .map(EventDetailMapper.INSTANCE::eventDetailToEventDetailDto);
+            case "events":
+                return searchService.findAllPart(read(request, JsonNode.class).path("page").asInt(0), null)
+                        .map(EventDetailMapper.INSTANCE::toListDTO);
+            case "events_cursor":
+                return searchService.findAllPart(read(request, JsonNode.class).path("cursor").textValue(), null)
+                        .map(EventPageMapper.INSTANCE::eventPageToEventPageDTO);
+            case "search": {
+                SearchEventRequest searchEventRequest = read(request, SearchEventRequest.class);
+                return searchService.searchPart(searchEventRequest.getQuery(), searchEventRequest.getPage(), searchEventRequest.getFilters(), range(searchEventRequest.getTimeRange()), null)
+                        .map(EventDetailMapper.INSTANCE::toListDTO);
+            }
+            case "search_cursor": {
+                SearchCursorRequest searchCursorRequest = read(request, SearchCursorRequest.class);
+                return searchService.searchPart(searchCursorRequest.getQuery(), searchCursorRequest.getCursor(), searchCursorRequest.getFilters(), range(searchCursorRequest.getTimeRange()), null)
+                        .map(EventPageMapper.INSTANCE::eventPageToEventPageDTO);
+            }
+            case "counter": {
+                CounterRequest counterRequest = read(request, CounterRequest.class);
+                return statService.counterPart(counterRequest.getFilters(), range(counterRequest.getTimeRange()))
+                        .map(GenericCounterMapper.INSTANCE::genericCounterToGenericCounterDTO);
+            }
+            case "cameras": {
+                CameraRequest cameraRequest = read(request, CameraRequest.class);
+                return statService.camerasPart(cameraRequest.getFilters(), range(cameraRequest.getTimeRange()));
+            }
+            case "averages":
+                return statService.averagesPart(read(request, AverageRequest.class).getFilters())
+                        .map(AverageCounterMapper.INSTANCE::averageCounterToAverageCounterDTO);
+            case "events_by_category": {
+                CountByCategoryRequest countByCategoryRequest = read(request, CountByCategoryRequest.class);
+                return statService.countByCategoryPart(countByCategoryRequest.getFilters(), range(countByCategoryRequest.getTimeRange()));
+            }
+            case "event_time": {
+                EventTimeRangeRequest eventTimeRangeRequest = read(request, EventTimeRangeRequest.class);
+                return statService.eventTimeRangePart(eventTimeRangeRequest.getEventStart(), eventTimeRangeRequest.getEventEnd(), eventTimeRangeRequest.getFilters(), range(eventTimeRangeRequest.getTimeRange()))
+                        .map(EventTimeRangeMapper.INSTANCE::eventTimeRangeToEventTimeRangeDTO);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown batch item type: " + type);
+        }
+    }
+
+    /**
+     * The endpoints require a time range; a batch item may leave it out to mean all of time.
+     */
+    private static TimeRangeDTO range(TimeRangeDTO timeRange) {
+        return timeRange == null ? new TimeRangeDTO() : timeRange;
+    }
+
+    /**
+     * Jackson reports a body of the wrong shape as an IllegalArgumentException, which is what
+     * marks the item as a bad request.
+     */
+    private <T> T read(JsonNode request, Class<T> type) {
+        return objectMapper.convertValue(request == null ? objectMapper.createObjectNode() : request, type);
+    }
+
+    private void complete(BatchItemDTO result, Object value) {
+        if (value instanceof Exception) {
+            Exception failure = (Exception) value;
+            result.setStatus(failure instanceof ElasticsearchException
+                    ? ((ElasticsearchException) failure).status().getStatus()
+                    : HttpStatus.INTERNAL_SERVER_ERROR.value());
+            result.setError(failure.getMessage());
+        } else {
+            result.setResult(value);
+        }
+    }
+}
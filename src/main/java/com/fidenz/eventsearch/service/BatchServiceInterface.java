@@ -0,0 +1,11 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.dto.BatchItemDTO;
+import com.fidenz.eventsearch.request.BatchItemRequest;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public interface BatchServiceInterface {
+    CompletableFuture<List<BatchItemDTO>> execute(List<BatchItemRequest> items);
+}
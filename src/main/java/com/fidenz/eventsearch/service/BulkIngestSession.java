@@ -0,0 +1,107 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.dto.IngestStatusDTO;
+import com.fidenz.eventsearch.listener.EventDataIngestListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkProcessor;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One ingest run's bulk processor. When the tuner is adaptive the processor is built without an
+ * action limit and batches are cut here instead, at whatever size the tuner currently asks for.
+ * Closing the session, whichever way, also ends its bulk-load mode.
+ */
+public class BulkIngestSession {
+
+    private final BulkProcessor bulkProcessor;
+    private final EventDataIngestListener listener;
+    private final BulkTuner bulkTuner;
+    private final BulkLoad bulkLoad;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder skipped = new LongAdder();
+    private final Set<String> indices = ConcurrentHashMap.newKeySet();
+    private final long startedAt = System.currentTimeMillis();
+    private volatile boolean drained;
+
+    public BulkIngestSession(BulkProcessor bulkProcessor, EventDataIngestListener listener, BulkTuner bulkTuner,
+                             BulkLoad bulkLoad) {
+        this.bulkProcessor = bulkProcessor;
+        this.listener = listener;
+        this.bulkTuner = bulkTuner;
+        this.bulkLoad = bulkLoad;
+    }
+
+    public void add(DocWriteRequest<?> request) throws IOException {
+        indices.add(request.index());
+        bulkLoad.onDocument(request.index());
+        bulkProcessor.add(request);
+        if (bulkTuner.isAdaptive() && pending.incrementAndGet() >= bulkTuner.getBulkActions()) {
+            pending.set(0);
+            bulkProcessor.flush();
+        }
+    }
+
+    public void skip() {
+        skipped.increment();
+    }
+
+    /**
+     * Flushes what is left and waits for every in-flight bulk request to come back, however long
+     * that takes; the client's own socket timeouts bound a hung request.
+     *
+     * @return whether every bulk request of the session succeeded
+     */
+    public boolean awaitClose() throws InterruptedException {
+        try {
+            bulkProcessor.awaitClose(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            drained = true;
+        } finally {
+            bulkLoad.close();
+        }
+        return !listener.hasFailures();
+    }
+
+    public void close() {
+        try {
+            bulkProcessor.close();
+        } finally {
+            bulkLoad.close();
+        }
+    }
+
+    /**
+     * Whether every document of the session has come back either written or rejected for good, so
+     * the input behind them need not be read again.
+     */
+    public boolean isSettled() {
+        return drained && !listener.hasRetryableFailures();
+    }
+
+    /**
+     * Every index the session has sent documents to.
+     */
+    public Set<String> getIndices() {
+        return indices;
+    }
+
+    public long getDocuments() {
+        return listener.getDocuments();
+    }
+
+    public long getFailedDocuments() {
+        return listener.getFailedDocuments();
+    }
+
+    public IngestStatusDTO toStatus(boolean status, String message) {
+        long elapsed = System.currentTimeMillis() - startedAt;
+        long documents = listener.getDocuments();
+        return new IngestStatusDTO(status, message, documents, skipped.sum(), listener.getBytes(),
+                listener.getFailedDocuments(), elapsed, elapsed == 0 ? 0 : documents * 1000.0 / elapsed);
+    }
+}
@@ -1,34 +1,51 @@
 package com.fidenz.eventsearch.service;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.datatype.joda.JodaModule;
+import com.fidenz.eventsearch.config.EventIndexTemplate;
+import com.fidenz.eventsearch.dto.IngestMetricsDTO;
 import com.fidenz.eventsearch.dto.IngestStatusDTO;
 import com.fidenz.eventsearch.entity.EventDetail;
+import com.fidenz.eventsearch.entity.FileCheckpoint;
 import com.fidenz.eventsearch.listener.EventDataIngestListener;
 import lombok.extern.slf4j.Slf4j;
 import org.elasticsearch.action.bulk.BulkProcessor;
-import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
 import org.elasticsearch.action.index.IndexRequest;
-import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
-import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
+import javax.annotation.PostConstruct;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
-
-import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
 public class BulkInsert implements BulkInsertInterface {
+
+    private static final String INDEX_CREATION_DATE = "index.creation_date";
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -37,92 +54,357 @@ public class BulkInsert implements BulkInsertInterface {
     private RestHighLevelClient client;
 
     @Autowired
-    private BulkInsert blk;
+    private CheckpointServiceInterface checkpointService;
+
+    @Autowired
+    private ExecutorService ingestExecutor;
+
+    @Autowired
+    private BulkTuner bulkTuner;
+
+    @Autowired
+    private IngestMetrics ingestMetrics;
+
+    @Autowired
+    private FingerprintIndex fingerprintIndex;
+
+    @Autowired
+    private EventIndexResolver indexResolver;
+
+    @Autowired
+    private EventIndexTemplate eventIndexTemplate;
+
+    @Autowired
+    private BulkLoadMode bulkLoadMode;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private EventLookup eventLookup;
+
+    @Autowired
+    private AutocompleteIndex autocompleteIndex;
+
+    @Value("${spring.data.elasticsearch.ingest-chunk-size}")
+    private long chunkSize;
+
+    @Value("${spring.data.elasticsearch.collector-path}")
+    private String collectorPath;
 
+    private ObjectReader eventReader;
+
+    private ObjectWriter documentWriter;
+
+    @PostConstruct
+    public void init() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JodaModule());
+        eventReader = mapper.readerFor(EventDetail.class);
+        documentWriter = objectMapper.copy()
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+                .writer();
+    }
 
     @Override
     public IngestStatusDTO ingestData(List<EventDetail> eventDetails) throws InterruptedException, IOException {
+        return ingestData(eventDetails, false);
+    }
+
+    /**
+     * @param bulkLoad suspend refresh and replicas on the target indices while writing; also done
+     *                 when the batch reaches the bulk-load threshold
+     */
+    @Override
+    public IngestStatusDTO ingestData(List<EventDetail> eventDetails, boolean bulkLoad) throws InterruptedException, IOException {
+        BulkIngestSession session = openSession(bulkLoad || bulkLoadMode.exceedsThreshold(eventDetails.size()));
+
+        try {
+            for (EventDetail eventDetail : eventDetails) {
+                index(session, eventDetail);
+            }
+        } catch (Exception e) {
+            log.error("error encountered", e);
+            closeSession(session);
+            return new IngestStatusDTO(false, "Operation failed");
+        }
 
-        BulkProcessor.Listener listener = new EventDataIngestListener();
+        return awaitIngest(session);
+    }
+
+    @Override
+    public IngestMetricsDTO getIngestMetrics() {
+        return ingestMetrics.snapshot();
+    }
 
+    @Override
+    public IngestStatusDTO ingestDataCall() throws IOException, InterruptedException {
+        return ingestDataCall(new IngestProgress(), null, false);
+    }
 
-        BulkProcessor bulkProcessor = BulkProcessor.builder(
-                (request, bulkListener) -> client.bulkAsync(request, RequestOptions.DEFAULT, bulkListener), listener).build();
+    /**
+     * Streams the collector directory into the bulk processor, starting each file at the offset
+     * recorded by the previous run. Unread ranges are split into line-aligned chunks that are
+     * parsed in parallel on the ingest worker pool; ids come from the file key and line offset,
+     * so they do not depend on how the work was split. Nothing is buffered beyond the batch the
+     * processor is filling; once its concurrent requests are all in flight, adding to the
+     * session blocks the workers until Elasticsearch acknowledges a batch.
+     * Offsets are persisted once every batch of the run has come back. A request that failed as a
+     * whole, or documents rejected under load, keep the old checkpoint so the run is retried; a
+     * document Elasticsearch rejected for its content, or a line that is not an event, would fail
+     * the same way on every retry, so it is counted as failed and the checkpoint moves past it.
+     *
+     * @param files    the collector files to read, or {@code null} to scan the whole directory; only a
+     *                 full scan drops the checkpoints of files that no longer exist
+     * @param bulkLoad suspend refresh and replicas from the first document rather than from the
+     *                 bulk-load threshold
+     */
+    @Override
+    public IngestStatusDTO ingestDataCall(IngestProgress progress, Set<Path> files, boolean bulkLoad) throws IOException, InterruptedException {
+        Map<String, FileCheckpoint> checkpoints = checkpointService.load();
+        Map<String, FileCheckpoint> updatedCheckpoints = files == null ? new HashMap<>() : new HashMap<>(checkpoints);
+        Map<String, List<Future<Long>>> fileChunks = new LinkedHashMap<>();
+        AtomicLong malformed = new AtomicLong();
+        BulkIngestSession session = openSession(bulkLoad);
+        progress.attach(session);
 
         try {
-            setIndexUpdate(eventDetails, bulkProcessor);
+            for (Path path : collectorFiles(files)) {
+                String fileKey = fileKey(path);
+                long size = Files.size(path);
+                FileCheckpoint checkpoint = checkpoints.get(fileKey);
+                long offset = checkpoint == null ? 0 : checkpoint.getOffset();
+                if (size < offset) {
+                    log.info("{} was truncated, reading it from the start", path);
+                    offset = 0;
+                }
+                if (size == offset) {
+                    updatedCheckpoints.put(fileKey, new FileCheckpoint(path.toString(), fileKey, offset));
+                    continue;
+                }
+
+                CollectorFileReader.LineHandler handler = (lineOffset, buffer, length) -> {
+                    EventDetail eventDetail;
+                    try {
+                        eventDetail = eventReader.readValue(buffer, 0, length);
+                    } catch (JsonProcessingException e) {
+                        malformed.incrementAndGet();
+                        log.warn("Skipping malformed line at {} of {}: {}", lineOffset, path, e.getOriginalMessage());
+                        eventDetail = null;
+                    }
+                    if (eventDetail != null) {
+                        eventDetail.setId(DocumentIds.forLine(fileKey, lineOffset));
+                        index(session, eventDetail);
+                    }
+                    progress.onLine(length);
+                };
+                List<Long> boundaries = CollectorFileReader.split(path, offset, size, chunkSize);
+                List<Future<Long>> chunks = new ArrayList<>();
+                for (int i = 0; i < boundaries.size() - 1; i++) {
+                    CollectorFileReader chunk = new CollectorFileReader(path, boundaries.get(i), boundaries.get(i + 1));
+                    chunks.add(ingestExecutor.submit(() -> chunk.readLines(handler)));
+                }
+                fileChunks.put(fileKey, chunks);
+                updatedCheckpoints.put(fileKey, new FileCheckpoint(path.toString(), fileKey, offset));
+            }
 
+            for (Map.Entry<String, List<Future<Long>>> entry : fileChunks.entrySet()) {
+                FileCheckpoint checkpoint = updatedCheckpoints.get(entry.getKey());
+                for (Future<Long> chunk : entry.getValue()) {
+                    checkpoint.setOffset(chunk.get());
+                }
+                progress.onFile();
+            }
         } catch (Exception e) {
             log.error("error encountered", e);
+            fileChunks.values().forEach(chunks -> chunks.forEach(chunk -> chunk.cancel(true)));
+            closeSession(session);
+            progress.detach(session);
             return new IngestStatusDTO(false, "Operation failed");
         }
 
-        try {
-            boolean terminated = bulkProcessor.awaitClose(30L, TimeUnit.SECONDS);
-            System.out.println("Updated");
-        } catch (InterruptedException e) {
-            return new IngestStatusDTO(false, "Operation failed");
+        IngestStatusDTO status = awaitIngest(session);
+        progress.detach(session);
+        status.setFailedDocuments(status.getFailedDocuments() + malformed.get());
+        if (session.isSettled()) {
+            checkpointService.save(updatedCheckpoints);
+            fingerprintIndex.saveIfDirty();
+            status.setStatus(true);
+            if (status.getFailedDocuments() > 0) {
+                status.setMessage("Operation successful, skipped " + status.getFailedDocuments() + " failed documents");
+            }
         }
-        return new IngestStatusDTO(true, "Operation successful");
+        return status;
     }
 
+    /**
+     * Indexes a pushed NDJSON body as it is read. Adding to the session blocks while its bulk
+     * requests are all in flight, so a slow cluster slows down reading the body and, through TCP,
+     * the producer. Records without an id get one derived from their content; malformed lines are
+     * counted as failed and skipped.
+     *
+     * @param bulkLoad suspend refresh and replicas from the first document rather than from the
+     *                 bulk-load threshold
+     */
     @Override
-    public IngestStatusDTO ingestDataCall() throws IOException, InterruptedException {
-        String line;
-        List<EventDetail> eventDetailList = new ArrayList<>();
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.registerModule(new JodaModule());
-        Integer count = 1;
-        File rep = new File("./collector");
-        File[] list = rep.listFiles();
-        for (int i = 0; i < Objects.requireNonNull(list).length; i++) {
-            File jsonFile = new File(list[i].toString());
-            FileReader fr = new FileReader(jsonFile);
-            BufferedReader br = new BufferedReader(fr);
-            while ((line = br.readLine()) != null) {
-                EventDetail eventDetail = mapper.readValue(line, EventDetail.class);
-                eventDetail.setId(count);
-                eventDetailList.add(eventDetail);
-                count++;
+    public IngestStatusDTO ingestStream(InputStream body, boolean bulkLoad) throws IOException {
+        BulkIngestSession session = openSession(bulkLoad);
+        AtomicLong malformed = new AtomicLong();
+
+        try {
+            NdjsonLineReader.read(body, (lineOffset, buffer, length) -> {
+                EventDetail eventDetail;
+                try {
+                    eventDetail = eventReader.readValue(buffer, 0, length);
+                } catch (JsonProcessingException e) {
+                    malformed.incrementAndGet();
+                    return;
+                }
+                if (eventDetail == null) {
+                    malformed.incrementAndGet();
+                    return;
+                }
+                if (eventDetail.getId() == null) {
+                    eventDetail.setId(DocumentIds.forContent(buffer, 0, length));
+                }
+                index(session, eventDetail);
+            });
+        } catch (IOException | RuntimeException e) {
+            log.error("error encountered", e);
+            closeSession(session);
+            throw e;
+        }
+
+        IngestStatusDTO status = awaitIngest(session);
+        fingerprintIndex.saveIfDirty();
+        if (malformed.get() > 0) {
+            status.setStatus(false);
+            status.setFailedDocuments(status.getFailedDocuments() + malformed.get());
+        }
+        return status;
+    }
+
+    private IngestStatusDTO awaitIngest(BulkIngestSession session) {
+        try {
+            if (!session.awaitClose()) {
+                return session.toStatus(false, "Operation failed");
             }
+            log.info("Updated");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return session.toStatus(false, "Operation failed");
+        } finally {
+            publishChanges(session);
         }
+        return session.toStatus(true, "Operation successful");
+    }
 
+    private void closeSession(BulkIngestSession session) {
+        session.close();
+        publishChanges(session);
+    }
+
+    /**
+     * Failed runs count too: whatever part of them Elasticsearch acknowledged has changed the index.
+     * The written indices are refreshed first, so that whatever is read under the generation the
+     * event starts already sees the run's documents; the refresh interval may still be suspended
+     * by another run in bulk-load mode.
+     */
+    private void publishChanges(BulkIngestSession session) {
+        if (session.getDocuments() > 0) {
+            refresh(session.getIndices());
+            eventPublisher.publishEvent(new IndexChangedEvent(this, session.getDocuments()));
+        }
+    }
 
-        return blk.ingestData(eventDetailList);
+    private void refresh(Set<String> indices) {
+        try {
+            RefreshRequest refreshRequest = new RefreshRequest(indices.toArray(new String[0]));
+            refreshRequest.indicesOptions(EventIndexResolver.SEARCH_OPTIONS);
+            client.indices().refresh(refreshRequest, RequestOptions.DEFAULT);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to refresh {} after ingest, new documents show up at the next refresh", indices, e);
+        }
     }
 
-    private void setIndexUpdate(List<EventDetail> eventDetails, BulkProcessor bulkProcessor){
-        BulkRequest bulkRequest = new BulkRequest();
+    private BulkIngestSession openSession(boolean bulkLoad) throws IOException {
+        eventIndexTemplate.ensureInstalled();
+        fingerprintIndex.setIndexCreationDates(indexCreationDates());
+        EventDataIngestListener listener = new EventDataIngestListener(bulkTuner, ingestMetrics, fingerprintIndex, eventLookup);
+        BulkProcessor bulkProcessor = bulkTuner.configure(BulkProcessor.builder(
+                (request, bulkListener) -> client.bulkAsync(request, RequestOptions.DEFAULT, bulkListener), listener))
+                .build();
+        return new BulkIngestSession(bulkProcessor, listener, bulkTuner, bulkLoadMode.open(bulkLoad));
+    }
 
-        eventDetails.forEach(eventDetail -> {
-            Map<String, Object> map = objectMapper.convertValue(eventDetail, HashMap.class);
-            map.values().removeAll(Collections.singleton(null));
-            Set<String> keys1 = map.keySet();
-            XContentBuilder builder = null;
-            try {
-                builder = jsonBuilder().startObject();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            for (String keys : keys1) {
-                try {
-                    builder.field(keys, map.get(keys));
-                } catch (IOException e) {
-                    e.printStackTrace();
+    /**
+     * Without them nothing is skipped this run, which only costs redundant writes.
+     */
+    private Map<String, Long> indexCreationDates() {
+        Map<String, Long> creationDates = new HashMap<>();
+        try {
+            GetSettingsResponse response = client.indices().getSettings(new GetSettingsRequest()
+                    .indices(EventIndexResolver.ALIAS, EventIndexResolver.PARTITION_PREFIX + "*")
+                    .names(INDEX_CREATION_DATE)
+                    .indicesOptions(EventIndexResolver.SEARCH_OPTIONS), RequestOptions.DEFAULT);
+            Iterator<String> indices = response.getIndexToSettings().keysIt();
+            while (indices.hasNext()) {
+                String index = indices.next();
+                String created = response.getSetting(index, INDEX_CREATION_DATE);
+                if (created != null) {
+                    creationDates.put(index, Long.parseLong(created));
                 }
             }
-            try {
-                builder.endObject();
-            } catch (IOException e) {
-                e.printStackTrace();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read the event index creation dates, writing every document this run", e);
+        }
+        return creationDates;
+    }
+
+    private List<Path> collectorFiles(Set<Path> files) throws IOException {
+        Path directory = Paths.get(collectorPath).toAbsolutePath().normalize();
+        List<Path> paths = new ArrayList<>();
+        if (files == null) {
+            try (Stream<Path> listing = Files.list(directory)) {
+                listing.filter(Files::isRegularFile).forEach(paths::add);
+            }
+        } else {
+            for (Path file : files) {
+                Path path = directory.resolve(file).normalize();
+                if (path.startsWith(directory) && Files.isRegularFile(path)) {
+                    paths.add(path);
+                }
             }
-            IndexRequest indexRequest = new IndexRequest("event_detail", "_doc", eventDetail.getId().toString()).
-                    source(builder);
-            UpdateRequest updateRequest = new UpdateRequest("event_detail", "_doc", eventDetail.getId().toString());
-            updateRequest.doc(builder);
-            updateRequest.upsert(indexRequest);
-
-            bulkProcessor.add(updateRequest);
-        });
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    /**
+     * Identifies a file by its inode where the filesystem exposes one, so a rotated (renamed) file
+     * keeps its checkpoint and its document ids.
+     */
+    private String fileKey(Path path) throws IOException {
+        Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        return fileKey != null ? fileKey.toString() : path.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Serializes the event once, straight to the JSON bytes that go into the bulk body, and sends
+     * them as a plain index operation. The document is always complete, so overwriting it is
+     * equivalent to the update-with-upsert it replaces, at half the payload. Events whose bytes
+     * match what Elasticsearch last acknowledged for their id are not sent at all.
+     */
+    private void index(BulkIngestSession session, EventDetail eventDetail) throws IOException {
+        byte[] source = documentWriter.writeValueAsBytes(eventDetail);
+        String index = indexResolver.indexFor(eventDetail.getTimestamp());
+        if (fingerprintIndex.isUnchanged(eventDetail.getId(), fingerprintIndex.fingerprint(index, source, 0, source.length))) {
+            session.skip();
+            return;
+        }
+        session.add(new IndexRequest(index)
+                .id(eventDetail.getId().toString())
+                .source(source, XContentType.JSON));
+        autocompleteIndex.record(eventDetail);
     }
 }
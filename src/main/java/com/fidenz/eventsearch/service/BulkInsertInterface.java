@@ -1,13 +1,21 @@
 package com.fidenz.eventsearch.service;
 
+import com.fidenz.eventsearch.dto.IngestMetricsDTO;
 import com.fidenz.eventsearch.dto.IngestStatusDTO;
 import com.fidenz.eventsearch.entity.EventDetail;
 import org.springframework.http.HttpStatus;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Set;
 
 public interface BulkInsertInterface {
     IngestStatusDTO ingestData(List<EventDetail> eventDetails) throws InterruptedException, IOException;
+    IngestStatusDTO ingestData(List<EventDetail> eventDetails, boolean bulkLoad) throws InterruptedException, IOException;
     IngestStatusDTO ingestDataCall() throws IOException, InterruptedException;
+    IngestStatusDTO ingestDataCall(IngestProgress progress, Set<Path> files, boolean bulkLoad) throws IOException, InterruptedException;
+    IngestStatusDTO ingestStream(InputStream body, boolean bulkLoad) throws IOException;
+    IngestMetricsDTO getIngestMetrics();
 }
@@ -0,0 +1,67 @@
+package com.fidenz.eventsearch.service;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One ingest run's use of {@link BulkLoadMode}. Sees the target index of every document; once
+ * the run reaches the threshold, every index it has written to so far and every one it writes to
+ * afterwards is suspended until {@link #close()}.
+ */
+public class BulkLoad {
+
+    private final BulkLoadMode mode;
+    private final long threshold;
+    private final AtomicLong documents = new AtomicLong();
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+    private final Set<String> acquired = ConcurrentHashMap.newKeySet();
+    private volatile boolean active;
+
+    /**
+     * @param threshold documents after which to switch on, 0 for at once, negative for never
+     */
+    BulkLoad(BulkLoadMode mode, long threshold) {
+        this.mode = mode;
+        this.threshold = threshold;
+    }
+
+    public void onDocument(String index) throws IOException {
+        if (threshold < 0) {
+            return;
+        }
+        if (active) {
+            if (!acquired.contains(index)) {
+                acquire(index);
+            }
+            return;
+        }
+        seen.add(index);
+        if (documents.incrementAndGet() >= threshold) {
+            activate();
+        }
+    }
+
+    private synchronized void activate() throws IOException {
+        if (active) {
+            return;
+        }
+        for (String index : seen) {
+            acquire(index);
+        }
+        active = true;
+    }
+
+    private synchronized void acquire(String index) throws IOException {
+        if (!acquired.contains(index)) {
+            mode.suspend(index);
+            acquired.add(index);
+        }
+    }
+
+    public synchronized void close() {
+        mode.release(acquired);
+        acquired.clear();
+    }
+}
@@ -0,0 +1,268 @@
+package com.fidenz.eventsearch.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeRequest;
+import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeResponse;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.RestStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns off refresh and replication on the indices a large ingest writes to and puts the original
+ * settings back when it is over. Runs overlapping on an index share its suspension; the settings
+ * are restored when the last of them finishes, so one run cannot restore the {@code -1} another
+ * one set.
+ *
+ * <p>The original settings of every suspended index are saved next to the ingest checkpoint until
+ * they are put back, so indices left suspended by a process that stopped mid-run, or whose restore
+ * failed, are restored once the application is ready or before the next suspension.
+ */
+@Component
+@Slf4j
+public class BulkLoadMode {
+
+    private static final String REFRESH_INTERVAL = "index.refresh_interval";
+    private static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+
+    @Qualifier("createInstance")
+    @Autowired
+    private RestHighLevelClient client;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Document count from which a run switches to bulk-load mode on its own; 0 leaves it to
+     * explicit requests.
+     */
+    @Value("${spring.data.elasticsearch.bulk-load-threshold}")
+    private long threshold;
+
+    /**
+     * Segment count to force-merge the indices down to after restoring them; 0 skips the merge.
+     */
+    @Value("${spring.data.elasticsearch.bulk-load-force-merge-segments}")
+    private int forceMergeSegments;
+
+    @Value("${spring.data.elasticsearch.bulk-load-state-file}")
+    private String stateFile;
+
+    /**
+     * Runs currently holding each suspended index.
+     */
+    private final Map<String, Integer> suspended = new HashMap<>();
+
+    /**
+     * Original settings of every index not yet restored, suspended or left over; what the state
+     * file holds.
+     */
+    private final Map<String, Map<String, String>> originals = new HashMap<>();
+
+    @PostConstruct
+    public void load() {
+        Path path = Paths.get(stateFile);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try {
+            originals.putAll(objectMapper.readValue(path.toFile(), new TypeReference<HashMap<String, Map<String, String>>>() {}));
+        } catch (IOException e) {
+            log.error("Could not read {}; indices it lists may still have {} -1 and {} 0",
+                    path, REFRESH_INTERVAL, NUMBER_OF_REPLICAS, e);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void onApplicationReady() {
+        restoreLeftovers();
+    }
+
+    /**
+     * @param requested switch to bulk-load mode from the first document, whatever the run's size
+     */
+    public BulkLoad open(boolean requested) {
+        if (requested) {
+            return new BulkLoad(this, 0);
+        }
+        return new BulkLoad(this, threshold > 0 ? threshold : -1);
+    }
+
+    public boolean exceedsThreshold(long documents) {
+        return threshold > 0 && documents >= threshold;
+    }
+
+    synchronized void suspend(String index) throws IOException {
+        restoreLeftovers();
+        Integer runs = suspended.get(index);
+        if (runs == null) {
+            createIfMissing(index);
+            if (!originals.containsKey(index)) {
+                // A leftover that could not be restored already reads -1 and 0; keep its saved originals
+                Settings current = client.indices().getSettings(new GetSettingsRequest()
+                        .indices(index)
+                        .names(REFRESH_INTERVAL, NUMBER_OF_REPLICAS), RequestOptions.DEFAULT)
+                        .getIndexToSettings().get(index);
+                Map<String, String> original = new HashMap<>();
+                for (String name : new String[]{REFRESH_INTERVAL, NUMBER_OF_REPLICAS}) {
+                    original.put(name, current == null ? null : current.get(name));
+                }
+                originals.put(index, original);
+                save();
+            }
+            client.indices().putSettings(new UpdateSettingsRequest(index).settings(Settings.builder()
+                    .put(REFRESH_INTERVAL, "-1")
+                    .put(NUMBER_OF_REPLICAS, 0)), RequestOptions.DEFAULT);
+            runs = 0;
+            log.info("Bulk-load mode on for {}", index);
+        }
+        suspended.put(index, runs + 1);
+    }
+
+    /**
+     * Never throws: this runs on the way out of failed ingests too. Settings are put back here,
+     * under the lock, so a suspension starting meanwhile cannot read the {@code -1} as original;
+     * the force merge runs afterwards in the background, so neither it nor the indices' normal
+     * settings wait on it. An index whose settings could not be restored stays in the state file
+     * and is retried later.
+     */
+    void release(Collection<String> indices) {
+        List<String> restored = new ArrayList<>();
+        synchronized (this) {
+            for (String index : indices) {
+                Integer runs = suspended.get(index);
+                if (runs == null) {
+                    continue;
+                }
+                if (runs > 1) {
+                    suspended.put(index, runs - 1);
+                } else {
+                    suspended.remove(index);
+                    if (restore(index)) {
+                        restored.add(index);
+                    }
+                }
+            }
+        }
+        if (forceMergeSegments > 0 && !restored.isEmpty()) {
+            forceMerge(restored);
+        }
+    }
+
+    private void forceMerge(List<String> indices) {
+        client.indices().forcemergeAsync(new ForceMergeRequest(indices.toArray(new String[0]))
+                .maxNumSegments(forceMergeSegments), RequestOptions.DEFAULT, new ActionListener<ForceMergeResponse>() {
+            @Override
+            public void onResponse(ForceMergeResponse response) {
+                log.info("Force-merged {} to {} segments", indices, forceMergeSegments);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                log.warn("Force merge of {} did not complete", indices, e);
+            }
+        });
+    }
+
+    private void restoreLeftovers() {
+        for (String index : new ArrayList<>(originals.keySet())) {
+            if (!suspended.containsKey(index)) {
+                restore(index);
+            }
+        }
+    }
+
+    /**
+     * @return whether the settings are back; an index that no longer exists counts as restored
+     */
+    private boolean restore(String index) {
+        Map<String, String> original = originals.get(index);
+        if (original == null) {
+            return true;
+        }
+        Settings.Builder settings = Settings.builder();
+        for (String name : new String[]{REFRESH_INTERVAL, NUMBER_OF_REPLICAS}) {
+            if (original.get(name) == null) {
+                settings.putNull(name);
+            } else {
+                settings.put(name, original.get(name));
+            }
+        }
+        try {
+            client.indices().putSettings(new UpdateSettingsRequest(index).settings(settings), RequestOptions.DEFAULT);
+            log.info("Bulk-load mode off for {}", index);
+        } catch (ElasticsearchStatusException e) {
+            if (e.status() != RestStatus.NOT_FOUND) {
+                log.error("Could not restore {} and {} on {}, they are still -1 and 0",
+                        REFRESH_INTERVAL, NUMBER_OF_REPLICAS, index, e);
+                return false;
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not restore {} and {} on {}, they are still -1 and 0",
+                    REFRESH_INTERVAL, NUMBER_OF_REPLICAS, index, e);
+            return false;
+        }
+        originals.remove(index);
+        save();
+        return true;
+    }
+
+    /**
+     * Written through a temp file like the checkpoint. A failure is only logged: the suspension
+     * itself went through, it just would not survive a crash.
+     */
+    private void save() {
+        try {
+            Path path = Paths.get(stateFile).toAbsolutePath();
+            Files.createDirectories(path.getParent());
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            objectMapper.writeValue(temp.toFile(), originals);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not save the bulk-load state to {}", stateFile, e);
+        }
+    }
+
+    /**
+     * Partitions are created by their first document, which is too late to suspend them, so they
+     * are created here from the template instead.
+     */
+    private void createIfMissing(String index) throws IOException {
+        if (client.indices().exists(new GetIndexRequest(index), RequestOptions.DEFAULT)) {
+            return;
+        }
+        try {
+            client.indices().create(new CreateIndexRequest(index), RequestOptions.DEFAULT);
+        } catch (ElasticsearchStatusException e) {
+            if (!client.indices().exists(new GetIndexRequest(index), RequestOptions.DEFAULT)) {
+                throw e;
+            }
+        }
+    }
+}
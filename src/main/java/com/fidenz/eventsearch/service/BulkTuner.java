@@ -0,0 +1,114 @@
+package com.fidenz.eventsearch.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Owns the bulk processor settings. In adaptive mode the batch size follows the round-trip
+ * latencies and rejections reported by {@link com.fidenz.eventsearch.listener.EventDataIngestListener}:
+ * it grows while full batches come back under the target latency and shrinks when they are slow
+ * or rejected. Concurrency backs off on rejections and recovers up to the configured value; since
+ * a bulk processor's concurrency is fixed once built, that change applies from the next run.
+ */
+@Component
+@Slf4j
+public class BulkTuner {
+
+    @Value("${spring.data.elasticsearch.bulk-actions}")
+    private int bulkActions;
+
+    @Value("${spring.data.elasticsearch.bulk-size}")
+    private long bulkSize;
+
+    @Value("${spring.data.elasticsearch.bulk-concurrent-requests}")
+    private int concurrentRequests;
+
+    @Value("${spring.data.elasticsearch.bulk-flush-interval}")
+    private long flushInterval;
+
+    @Value("${spring.data.elasticsearch.bulk-backoff-delay}")
+    private long backoffDelay;
+
+    @Value("${spring.data.elasticsearch.bulk-backoff-retries}")
+    private int backoffRetries;
+
+    @Value("${spring.data.elasticsearch.bulk-adaptive}")
+    private boolean adaptive;
+
+    @Value("${spring.data.elasticsearch.bulk-target-latency}")
+    private long targetLatency;
+
+    private volatile int currentActions;
+    private volatile int currentConcurrency;
+
+    @PostConstruct
+    public void init() {
+        currentActions = bulkActions;
+        currentConcurrency = concurrentRequests;
+    }
+
+    public BulkProcessor.Builder configure(BulkProcessor.Builder builder) {
+        return builder
+                .setBulkActions(adaptive ? -1 : bulkActions)
+                .setBulkSize(new ByteSizeValue(bulkSize, ByteSizeUnit.BYTES))
+                .setConcurrentRequests(getConcurrentRequests())
+                .setFlushInterval(flushInterval > 0 ? TimeValue.timeValueMillis(flushInterval) : null)
+                .setBackoffPolicy(BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(backoffDelay), backoffRetries));
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public int getBulkActions() {
+        return adaptive ? currentActions : bulkActions;
+    }
+
+    public int getConcurrentRequests() {
+        return adaptive ? currentConcurrency : concurrentRequests;
+    }
+
+    public synchronized void onBulk(int actions, long latencyMillis, int rejections) {
+        if (!adaptive) {
+            return;
+        }
+        if (rejections > 0) {
+            backOff();
+        } else if (latencyMillis > targetLatency) {
+            currentActions = Math.max(minActions(), currentActions * 3 / 4);
+        } else if (actions >= currentActions) {
+            currentActions = Math.min(maxActions(), currentActions + Math.max(1, bulkActions / 10));
+            if (latencyMillis < targetLatency / 2 && currentConcurrency < concurrentRequests) {
+                currentConcurrency++;
+            }
+        }
+        log.debug("Bulk tuned to {} actions, {} concurrent requests", currentActions, currentConcurrency);
+    }
+
+    public synchronized void onBulkFailure() {
+        if (adaptive) {
+            backOff();
+        }
+    }
+
+    private void backOff() {
+        currentActions = Math.max(minActions(), currentActions / 2);
+        currentConcurrency = Math.max(1, currentConcurrency - 1);
+    }
+
+    private int minActions() {
+        return Math.max(1, bulkActions / 10);
+    }
+
+    private int maxActions() {
+        return bulkActions * 10;
+    }
+}
@@ -0,0 +1,158 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.dto.FilterDTO;
+import com.fidenz.eventsearch.dto.TimeRangeDTO;
+import com.fidenz.eventsearch.entity.EventDetail;
+import com.fidenz.eventsearch.entity.EventPage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Serves repeated {@code search} and {@code findAll} pages from the {@link SearchCache}; every
+ * other lookup goes straight to the {@link CoalescingSearchService}.
+ */
+@Service
+@Primary
+public class CachingSearchService implements SearchServiceInterface {
+
+    @Autowired
+    @Qualifier("coalescingSearchService")
+    private SearchServiceInterface searchService;
+
+    @Autowired
+    private SearchCache searchCache;
+
+    @Override
+    public EventDetail findById(String id) throws IOException {
+        return searchService.findById(id);
+    }
+
+    @Override
+    public List<EventDetail> findByIds(List<String> ids) throws IOException {
+        return searchService.findByIds(ids);
+    }
+
+    @Override
+    public List<EventDetail> findAll(int page) throws IOException {
+        if (!searchCache.isEnabled()) {
+            return searchService.findAll(page);
+        }
+        String key = SearchCache.findAllKey(searchCache.generation(), page);
+        List<EventDetail> events = searchCache.get(key);
+        if (events == null) {
+            events = searchCache.put(key, searchService.findAll(page));
+        }
+        return events;
+    }
+
+    @Override
+    public List<EventDetail> search(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
+        if (!searchCache.isEnabled()) {
+            return searchService.search(query, page, filters, timeRangeDTO);
+        }
+        String key = SearchCache.searchKey(searchCache.generation(), query, page, filters, timeRangeDTO);
+        List<EventDetail> events = searchCache.get(key);
+        if (events == null) {
+            events = searchCache.put(key, searchService.search(query, page, filters, timeRangeDTO));
+        }
+        return events;
+    }
+
+    @Override
+    public byte[] findByIdRaw(String id) throws IOException {
+        return searchService.findByIdRaw(id);
+    }
+
+    @Override
+    public byte[] findAllRaw(int page) throws IOException {
+        return searchService.findAllRaw(page);
+    }
+
+    @Override
+    public byte[] searchRaw(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
+        return searchService.searchRaw(query, page, filters, timeRangeDTO);
+    }
+
+    @Override
+    public EventPage findAll(String cursor) throws IOException {
+        return searchService.findAll(cursor);
+    }
+
+    @Override
+    public EventPage search(String query, String cursor, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
+        return searchService.search(query, cursor, filters, timeRangeDTO);
+    }
+
+    @Override
+    public CompletableFuture<EventDetail> findByIdAsync(String id) {
+        return searchService.findByIdAsync(id);
+    }
+
+    @Override
+    public CompletableFuture<List<EventDetail>> findByIdsAsync(List<String> ids) {
+        return searchService.findByIdsAsync(ids);
+    }
+
+    @Override
+    public CompletableFuture<List<EventDetail>> findAllAsync(int page) {
+        if (!searchCache.isEnabled()) {
+            return searchService.findAllAsync(page);
+        }
+        String key = SearchCache.findAllKey(searchCache.generation(), page);
+        List<EventDetail> events = searchCache.get(key);
+        if (events != null) {
+            return CompletableFuture.completedFuture(events);
+        }
+        return searchService.findAllAsync(page).thenApply(result -> searchCache.put(key, result));
+    }
+
+    @Override
+    public CompletableFuture<List<EventDetail>> searchAsync(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        if (!searchCache.isEnabled()) {
+            return searchService.searchAsync(query, page, filters, timeRangeDTO);
+        }
+        String key = SearchCache.searchKey(searchCache.generation(), query, page, filters, timeRangeDTO);
+        List<EventDetail> events = searchCache.get(key);
+        if (events != null) {
+            return CompletableFuture.completedFuture(events);
+        }
+        return searchService.searchAsync(query, page, filters, timeRangeDTO).thenApply(result -> searchCache.put(key, result));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> findByIdRawAsync(String id) {
+        return searchService.findByIdRawAsync(id);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> findAllRawAsync(int page) {
+        return searchService.findAllRawAsync(page);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> searchRawAsync(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return searchService.searchRawAsync(query, page, filters, timeRangeDTO);
+    }
+
+    @Override
+    public CompletableFuture<EventPage> findAllAsync(String cursor) {
+        return searchService.findAllAsync(cursor);
+    }
+
+    @Override
+    public CompletableFuture<EventPage> searchAsync(String query, String cursor, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return searchService.searchAsync(query, cursor, filters, timeRangeDTO);
+    }
+
+    @Override
+    public void export(String query, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO, String format, OutputStream out) throws IOException {
+        searchService.export(query, filters, timeRangeDTO, format, out);
+    }
+}
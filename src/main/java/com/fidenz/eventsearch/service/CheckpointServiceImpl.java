@@ -0,0 +1,48 @@
+package com.fidenz.eventsearch.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fidenz.eventsearch.entity.FileCheckpoint;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+@Service
+public class CheckpointServiceImpl implements CheckpointServiceInterface {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${spring.data.elasticsearch.ingest-checkpoint-file}")
+    private String checkpointFile;
+
+    @Override
+    public Map<String, FileCheckpoint> load() throws IOException {
+        Path path = Paths.get(checkpointFile);
+        if (!Files.exists(path)) {
+            return new HashMap<>();
+        }
+        return objectMapper.readValue(path.toFile(), new TypeReference<HashMap<String, FileCheckpoint>>() {});
+    }
+
+    /**
+     * Writes to a sibling temp file and renames it over the previous checkpoint, so a crash
+     * mid-write leaves the last good checkpoint in place.
+     */
+    @Override
+    public void save(Map<String, FileCheckpoint> checkpoints) throws IOException {
+        Path path = Paths.get(checkpointFile).toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        objectMapper.writeValue(temp.toFile(), checkpoints);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
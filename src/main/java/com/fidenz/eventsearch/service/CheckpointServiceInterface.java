@@ -0,0 +1,11 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.entity.FileCheckpoint;
+
+import java.io.IOException;
+import java.util.Map;
+
+public interface CheckpointServiceInterface {
+    Map<String, FileCheckpoint> load() throws IOException;
+    void save(Map<String, FileCheckpoint> checkpoints) throws IOException;
+}
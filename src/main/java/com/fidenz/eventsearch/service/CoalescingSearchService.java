@@ -0,0 +1,141 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.dto.FilterDTO;
+import com.fidenz.eventsearch.dto.TimeRangeDTO;
+import com.fidenz.eventsearch.entity.EventDetail;
+import com.fidenz.eventsearch.entity.EventPage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Lets identical concurrent lookups share one Elasticsearch request. Sits below the
+ * {@link CachingSearchService}, so a burst of misses for the same page becomes a single query
+ * whose result then fills the cache. Exports stream straight through.
+ */
+@Service
+public class CoalescingSearchService implements SearchServiceInterface {
+
+    @Autowired
+    @Qualifier("searchServiceImpl")
+    private SearchServiceInterface searchService;
+
+    @Autowired
+    private SearchCache searchCache;
+
+    private final SingleFlight<String, EventDetail> details = new SingleFlight<>();
+    private final SingleFlight<String, List<EventDetail>> pages = new SingleFlight<>();
+    private final SingleFlight<String, byte[]> raw = new SingleFlight<>();
+    private final SingleFlight<String, EventPage> cursorPages = new SingleFlight<>();
+
+    @Override
+    public EventDetail findById(String id) throws IOException {
+        return AsyncSearchClient.await(findByIdAsync(id));
+    }
+
+    @Override
+    public List<EventDetail> findByIds(List<String> ids) throws IOException {
+        return searchService.findByIds(ids);
+    }
+
+    @Override
+    public List<EventDetail> findAll(int page) throws IOException {
+        return AsyncSearchClient.await(findAllAsync(page));
+    }
+
+    @Override
+    public List<EventDetail> search(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
+        return AsyncSearchClient.await(searchAsync(query, page, filters, timeRangeDTO));
+    }
+
+    @Override
+    public byte[] findByIdRaw(String id) throws IOException {
+        return AsyncSearchClient.await(findByIdRawAsync(id));
+    }
+
+    @Override
+    public byte[] findAllRaw(int page) throws IOException {
+        return AsyncSearchClient.await(findAllRawAsync(page));
+    }
+
+    @Override
+    public byte[] searchRaw(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
+        return AsyncSearchClient.await(searchRawAsync(query, page, filters, timeRangeDTO));
+    }
+
+    @Override
+    public EventPage findAll(String cursor) throws IOException {
+        return AsyncSearchClient.await(findAllAsync(cursor));
+    }
+
+    @Override
+    public EventPage search(String query, String cursor, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
+        return AsyncSearchClient.await(searchAsync(query, cursor, filters, timeRangeDTO));
+    }
+
+    @Override
+    public CompletableFuture<EventDetail> findByIdAsync(String id) {
+        return details.execute(key("id").add(id).build(), () -> searchService.findByIdAsync(id));
+    }
+
+    @Override
+    public CompletableFuture<List<EventDetail>> findByIdsAsync(List<String> ids) {
+        return searchService.findByIdsAsync(ids);
+    }
+
+    @Override
+    public CompletableFuture<List<EventDetail>> findAllAsync(int page) {
+        return pages.execute(key("all").add(page).build(), () -> searchService.findAllAsync(page));
+    }
+
+    @Override
+    public CompletableFuture<List<EventDetail>> searchAsync(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        String key = searchKey("search", query, filters, timeRangeDTO).add(page).build();
+        return pages.execute(key, () -> searchService.searchAsync(query, page, filters, timeRangeDTO));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> findByIdRawAsync(String id) {
+        return raw.execute(key("rawId").add(id).build(), () -> searchService.findByIdRawAsync(id));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> findAllRawAsync(int page) {
+        return raw.execute(key("rawAll").add(page).build(), () -> searchService.findAllRawAsync(page));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> searchRawAsync(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        String key = searchKey("rawSearch", query, filters, timeRangeDTO).add(page).build();
+        return raw.execute(key, () -> searchService.searchRawAsync(query, page, filters, timeRangeDTO));
+    }
+
+    @Override
+    public CompletableFuture<EventPage> findAllAsync(String cursor) {
+        return cursorPages.execute(key("allCursor").add(cursor).build(), () -> searchService.findAllAsync(cursor));
+    }
+
+    @Override
+    public CompletableFuture<EventPage> searchAsync(String query, String cursor, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        String key = searchKey("searchCursor", query, filters, timeRangeDTO).add(cursor).build();
+        return cursorPages.execute(key, () -> searchService.searchAsync(query, cursor, filters, timeRangeDTO));
+    }
+
+    @Override
+    public void export(String query, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO, String format, OutputStream out) throws IOException {
+        searchService.export(query, filters, timeRangeDTO, format, out);
+    }
+
+    private RequestKey key(String kind) {
+        return RequestKey.of(kind).add(searchCache.generation());
+    }
+
+    private RequestKey searchKey(String kind, String query, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return key(kind).add(query == null ? "" : query).timeRange(timeRangeDTO).filters(filters);
+    }
+}
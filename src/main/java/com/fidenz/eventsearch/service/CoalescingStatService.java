@@ -0,0 +1,99 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.dto.FilterDTO;
+import com.fidenz.eventsearch.dto.TimeRangeDTO;
+import com.fidenz.eventsearch.entity.AverageCounter;
+import com.fidenz.eventsearch.entity.EventTimeRange;
+import com.fidenz.eventsearch.entity.GenericCounter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Lets identical concurrent stat lookups share one Elasticsearch request, so a dashboard refresh
+ * across many screens costs one aggregation instead of one per screen. Keys carry the index
+ * generation, so a lookup started after an ingest run never joins one that began before it.
+ * Joined callers receive the same result object and must not modify it.
+ */
+@Service
+@Primary
+public class CoalescingStatService implements StatServiceInterface {
+
+    @Autowired
+    @Qualifier("statServiceImpl")
+    private StatServiceInterface statService;
+
+    @Autowired
+    private SearchCache searchCache;
+
+    private final SingleFlight<String, GenericCounter> counters = new SingleFlight<>();
+    private final SingleFlight<String, List<String>> cameras = new SingleFlight<>();
+    private final SingleFlight<String, AverageCounter> averages = new SingleFlight<>();
+    private final SingleFlight<String, HashMap<String, Long>> categories = new SingleFlight<>();
+    private final SingleFlight<String, EventTimeRange> timeRanges = new SingleFlight<>();
+
+    @Override
+    public GenericCounter findCounter(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
+        return AsyncSearchClient.await(findCounterAsync(filters, timeRangeDTO));
+    }
+
+    @Override
+    public List<String> findCameras(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
+        return AsyncSearchClient.await(findCamerasAsync(filters, timeRangeDTO));
+    }
+
+    @Override
+    public AverageCounter findAverages(List<FilterDTO> filters) throws IOException {
+        return AsyncSearchClient.await(findAveragesAsync(filters));
+    }
+
+    @Override
+    public HashMap<String, Long> findCountByCategory(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
+        return AsyncSearchClient.await(findCountByCategoryAsync(filters, timeRangeDTO));
+    }
+
+    @Override
+    public EventTimeRange findEventTimeRange(String event_start, String event_end, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
+        return AsyncSearchClient.await(findEventTimeRangeAsync(event_start, event_end, filters, timeRangeDTO));
+    }
+
+    @Override
+    public CompletableFuture<GenericCounter> findCounterAsync(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        String key = key("counter").timeRange(timeRangeDTO).filters(filters).build();
+        return counters.execute(key, () -> statService.findCounterAsync(filters, timeRangeDTO));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> findCamerasAsync(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        String key = key("cameras").timeRange(timeRangeDTO).filters(filters).build();
+        return cameras.execute(key, () -> statService.findCamerasAsync(filters, timeRangeDTO));
+    }
+
+    @Override
+    public CompletableFuture<AverageCounter> findAveragesAsync(List<FilterDTO> filters) {
+        String key = key("averages").filters(filters).build();
+        return averages.execute(key, () -> statService.findAveragesAsync(filters));
+    }
+
+    @Override
+    public CompletableFuture<HashMap<String, Long>> findCountByCategoryAsync(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        String key = key("categories").timeRange(timeRangeDTO).filters(filters).build();
+        return categories.execute(key, () -> statService.findCountByCategoryAsync(filters, timeRangeDTO));
+    }
+
+    @Override
+    public CompletableFuture<EventTimeRange> findEventTimeRangeAsync(String event_start, String event_end, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        String key = key("timeRange").add(event_start).add(event_end).timeRange(timeRangeDTO).filters(filters).build();
+        return timeRanges.execute(key, () -> statService.findEventTimeRangeAsync(event_start, event_end, filters, timeRangeDTO));
+    }
+
+    private RequestKey key(String kind) {
+        return RequestKey.of(kind).add(searchCache.generation());
+    }
+}
@@ -0,0 +1,128 @@
+package com.fidenz.eventsearch.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads newline-delimited records from a byte range of a collector file. Only complete lines are
+ * handed out; a trailing line without its newline is left for the next read, so a file that is
+ * still being appended to is never consumed half-way through a record.
+ */
+public class CollectorFileReader {
+
+    public interface LineHandler {
+        void onLine(long offset, byte[] buffer, int length) throws IOException;
+    }
+
+    private static final long MAX_WINDOW = 64 * 1024 * 1024;
+
+    private final Path path;
+    private final long startOffset;
+    private final long endOffset;
+
+    public CollectorFileReader(Path path, long startOffset, long endOffset) {
+        this.path = path;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+    }
+
+    /**
+     * Splits {@code [start, end)} into ranges of roughly {@code chunkSize} bytes that each begin
+     * at the start of a line, so they can be read independently.
+     *
+     * @return the range boundaries, starting with {@code start} and ending with {@code end}
+     */
+    public static List<Long> split(Path path, long start, long end, long chunkSize) throws IOException {
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(start);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+            long next = start + chunkSize;
+            while (next < end) {
+                long boundary = nextLineStart(channel, next, end, buffer);
+                if (boundary >= end) {
+                    break;
+                }
+                boundaries.add(boundary);
+                next = boundary + chunkSize;
+            }
+        }
+        boundaries.add(end);
+        return boundaries;
+    }
+
+    private static long nextLineStart(FileChannel channel, long from, long end, ByteBuffer buffer) throws IOException {
+        long position = from - 1;
+        while (position < end) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return end;
+    }
+
+    /**
+     * Maps the range window by window and scans the mapped bytes for newlines. Each line is copied
+     * once, into a buffer that is reused for the whole range, and handed to the handler as bytes;
+     * no per-line String or stream is created on the way.
+     *
+     * @return the offset just past the last complete line, to be stored as the next checkpoint
+     */
+    public long readLines(LineHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            byte[] line = new byte[4 * 1024];
+            int length = 0;
+            long lineStart = startOffset;
+            long position = startOffset;
+            while (position < endOffset) {
+                int windowSize = (int) Math.min(MAX_WINDOW, endOffset - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                int segmentStart = 0;
+                for (int i = 0; i < windowSize; i++) {
+                    if (window.get(i) != '\n') {
+                        continue;
+                    }
+                    line = append(line, length, window, segmentStart, i - segmentStart);
+                    length += i - segmentStart;
+                    if (length > 0) {
+                        handler.onLine(lineStart, line, length);
+                    }
+                    length = 0;
+                    lineStart = position + i + 1;
+                    segmentStart = i + 1;
+                }
+                line = append(line, length, window, segmentStart, windowSize - segmentStart);
+                length += windowSize - segmentStart;
+                position += windowSize;
+            }
+            return lineStart;
+        }
+    }
+
+    private static byte[] append(byte[] line, int length, ByteBuffer window, int from, int count) {
+        if (count == 0) {
+            return line;
+        }
+        if (length + count > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, length + count));
+        }
+        window.position(from);
+        window.get(line, length, count);
+        return line;
+    }
+}
@@ -0,0 +1,48 @@
+package com.fidenz.eventsearch.service;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Derives document ids from where an event was read rather than from a running counter, so the
+ * same collector line always maps to the same document no matter how many times it is ingested.
+ */
+public final class DocumentIds {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private DocumentIds() {
+    }
+
+    public static long forLine(String fileIdentity, long offset) {
+        return mix(hash(fileIdentity) + offset) & Long.MAX_VALUE;
+    }
+
+    /**
+     * For events that have no file position, such as pushed records: identical records collapse
+     * into one document, so a producer retrying a request does not create duplicates.
+     */
+    public static long forContent(byte[] buffer, int offset, int length) {
+        return mix(hash(buffer, offset, length)) & Long.MAX_VALUE;
+    }
+
+    static long hash(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return hash(bytes, 0, bytes.length);
+    }
+
+    static long hash(byte[] buffer, int offset, int length) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= buffer[i] & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,57 @@
+package com.fidenz.eventsearch.service;
+
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Cursor for paging events newest first with {@code search_after}. The sort ends in {@code id},
+ * which is unique, so a page boundary is never ambiguous, and it follows the index sort, so each
+ * shard can stop after the page instead of collecting every hit before it. The token is the last
+ * hit's sort values, encoded so that clients treat it as opaque.
+ */
+public final class EventCursor {
+
+    private EventCursor() {
+    }
+
+    /**
+     * Sorts the request by (Timestamp, id) descending and, given a cursor, starts after it.
+     */
+    public static void apply(SearchSourceBuilder source, String cursor) {
+        source.sort(new FieldSortBuilder("Timestamp").order(SortOrder.DESC))
+                .sort(new FieldSortBuilder("id").order(SortOrder.DESC))
+                .trackTotalHits(false);
+        if (cursor != null && !cursor.isEmpty()) {
+            source.searchAfter(decode(cursor));
+        }
+    }
+
+    /**
+     * @return the cursor of the page after {@code hits}, or {@code null} if it was the last one
+     */
+    public static String next(SearchHit[] hits, int pageSize) {
+        if (hits.length < pageSize) {
+            return null;
+        }
+        Object[] sortValues = hits[hits.length - 1].getSortValues();
+        String token = sortValues[0] + ":" + sortValues[1];
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Object[] decode(String cursor) {
+        try {
+            String token = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = token.indexOf(':');
+            return new Object[]{
+                    Long.parseLong(token.substring(0, separator)),
+                    Long.parseLong(token.substring(separator + 1))};
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+}
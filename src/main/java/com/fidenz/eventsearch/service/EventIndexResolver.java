@@ -0,0 +1,127 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.dto.TimeRangeDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps events to time-partitioned indices ({@code event_detail-yyyy.MM.dd}, one per day or per
+ * week starting on Monday) and queries to the partitions they can match. Every partition joins the
+ * {@code event_detail} alias through the index template, so queries without a usable time range
+ * still see all of them.
+ */
+@Component
+@Slf4j
+public class EventIndexResolver {
+
+    public static final String ALIAS = "event_detail";
+    public static final String PARTITION_PREFIX = ALIAS + "-";
+
+    private static final int MAX_PARTITIONS_PER_QUERY = 64;
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormat.forPattern("yyyy.MM.dd").withZoneUTC();
+    /** Bounds without an offset are UTC, as Elasticsearch reads them, not the JVM's default zone. */
+    private static final DateTimeFormatter BOUND_PARSER = ISODateTimeFormat.dateTimeParser().withZoneUTC();
+
+    /**
+     * Partitions named in a query may not exist (no events that day), which must not fail it.
+     */
+    public static final IndicesOptions SEARCH_OPTIONS = IndicesOptions.lenientExpandOpen();
+
+    @Value("${spring.data.elasticsearch.index-partition}")
+    private String partition;
+
+    private volatile boolean dynamicMapping;
+
+    public boolean isPartitioned() {
+        return !"none".equals(partition);
+    }
+
+    /**
+     * Falls back to writing into the single {@code event_detail} index, used when that name is
+     * still taken by an unpartitioned index and therefore cannot become the alias.
+     */
+    public void disablePartitioning() {
+        partition = "none";
+    }
+
+    /**
+     * Marks the event data as mapped dynamically (an index created before the template existed),
+     * where string fields are only aggregatable through their {@code .keyword} sub-field.
+     */
+    public void useDynamicMapping() {
+        dynamicMapping = true;
+    }
+
+    public boolean isDynamicMapping() {
+        return dynamicMapping;
+    }
+
+    /**
+     * Name of the aggregatable form of a string field under the mapping in use.
+     */
+    public String keywordField(String field) {
+        return dynamicMapping ? field + ".keyword" : field;
+    }
+
+    public String indexFor(DateTime timestamp) {
+        if (!isPartitioned()) {
+            return ALIAS;
+        }
+        return PARTITION_PREFIX + PARTITION_FORMAT.print(partitionStart(timestamp == null ? DateTime.now() : timestamp));
+    }
+
+    public String[] indicesFor(TimeRangeDTO timeRange) {
+        if (!isPartitioned() || timeRange == null) {
+            return new String[]{ALIAS};
+        }
+        DateTime from = parse(timeRange.getFrom());
+        DateTime to = parse(timeRange.getTo());
+        if (from == null || to == null || from.isAfter(to)) {
+            return new String[]{ALIAS};
+        }
+
+        List<String> indices = new ArrayList<>();
+        DateTime end = partitionStart(to);
+        for (DateTime start = partitionStart(from); !start.isAfter(end); start = next(start)) {
+            if (indices.size() == MAX_PARTITIONS_PER_QUERY) {
+                return new String[]{ALIAS};
+            }
+            indices.add(PARTITION_PREFIX + PARTITION_FORMAT.print(start));
+        }
+        return indices.toArray(new String[0]);
+    }
+
+    private DateTime partitionStart(DateTime timestamp) {
+        DateTime day = timestamp.withZone(DateTimeZone.UTC).withTimeAtStartOfDay();
+        return "weekly".equals(partition) ? day.withDayOfWeek(1) : day;
+    }
+
+    private DateTime next(DateTime start) {
+        return "weekly".equals(partition) ? start.plusWeeks(1) : start.plusDays(1);
+    }
+
+    /**
+     * Range bounds may also be Elasticsearch date math ("now-1d"), which only the cluster can
+     * resolve; those fall back to the alias.
+     */
+    private DateTime parse(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return BOUND_PARSER.parseDateTime(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
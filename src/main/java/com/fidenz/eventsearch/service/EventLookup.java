@@ -0,0 +1,279 @@
+package com.fidenz.eventsearch.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fidenz.eventsearch.entity.EventDetail;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Looks events up by id. Recently fetched events stay in a bounded near-cache, which ingest
+ * invalidates id by id as it writes them. Single lookups that miss wait up to the batch delay and
+ * go out together with whatever else arrived meanwhile, so a pane opening fifty events costs one
+ * request rather than fifty. Without partitioning that request is a realtime mget. Partitioned ids
+ * cannot be routed to their index, so they go as one ids query over the alias instead, which only
+ * sees writes after the next refresh; a search between the write and the refresh can still cache
+ * the old document, so the whole cache is dropped again once ingest has refreshed.
+ *
+ * <p>Each invalidation bumps a version for the ids it covers, held in a fixed table of stripes,
+ * and dropping the cache bumps a generation. A fetch caches only the events whose version and
+ * generation did not move while it was out, so a lookup that raced a write cannot put the old
+ * document back.
+ */
+@Component
+public class EventLookup {
+
+    private static final int VERSION_STRIPES = 4096;
+
+    /**
+     * Events held in the near-cache; 0 disables it.
+     */
+    @Value("${spring.data.elasticsearch.lookup-cache-max-events}")
+    private long maxEvents;
+
+    @Value("${spring.data.elasticsearch.lookup-cache-ttl}")
+    private long ttl;
+
+    /**
+     * How long a single lookup may wait for others to join it, in milliseconds; 0 sends each one
+     * straight away.
+     */
+    @Value("${spring.data.elasticsearch.lookup-batch-delay}")
+    private long batchDelay;
+
+    @Value("${spring.data.elasticsearch.lookup-batch-size}")
+    private int batchSize;
+
+    /**
+     * Most ids a single {@link #findAll} may ask for.
+     */
+    @Value("${spring.data.elasticsearch.lookup-max-ids}")
+    private int maxIds;
+
+    @Autowired
+    private AsyncSearchClient asyncClient;
+
+    @Autowired
+    private EventIndexResolver indexResolver;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("event-lookup-"));
+
+    private Cache<String, EventDetail> cache;
+
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private Map<String, CompletableFuture<EventDetail>> pending = new HashMap<>();
+
+    @PostConstruct
+    public void init() {
+        batchSize = Math.max(1, batchSize);
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxEvents)
+                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Completes with {@code null} if there is no such event.
+     */
+    public CompletableFuture<EventDetail> find(String id) {
+        EventDetail event = cache.getIfPresent(id);
+        if (event != null) {
+            return CompletableFuture.completedFuture(event);
+        }
+        CompletableFuture<EventDetail> future;
+        Map<String, CompletableFuture<EventDetail>> full = null;
+        synchronized (this) {
+            future = pending.get(id);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                pending.put(id, future);
+                if (pending.size() >= batchSize || batchDelay <= 0) {
+                    full = takePending();
+                } else if (pending.size() == 1) {
+                    scheduler.schedule(this::flush, batchDelay, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return future.copy();
+    }
+
+    /**
+     * @return the events that exist, in the order of {@code ids}
+     */
+    public CompletableFuture<List<EventDetail>> findAll(List<String> ids) {
+        if (ids.size() > maxIds) {
+            throw new IllegalArgumentException("A lookup takes at most " + maxIds + " ids, got " + ids.size());
+        }
+        Set<String> unique = new LinkedHashSet<>(ids);
+        Map<String, EventDetail> found = new HashMap<>(cache.getAllPresent(unique));
+        List<String> misses = new ArrayList<>();
+        for (String id : unique) {
+            if (!found.containsKey(id)) {
+                misses.add(id);
+            }
+        }
+        List<CompletableFuture<Map<String, EventDetail>>> chunks = new ArrayList<>();
+        for (int from = 0; from < misses.size(); from += batchSize) {
+            chunks.add(fetch(misses.subList(from, Math.min(misses.size(), from + batchSize))));
+        }
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0])).thenApply(done -> {
+            chunks.forEach(chunk -> found.putAll(chunk.join()));
+            List<EventDetail> events = new ArrayList<>(found.size());
+            for (String id : unique) {
+                if (found.containsKey(id)) {
+                    events.add(found.get(id));
+                }
+            }
+            return events;
+        });
+    }
+
+    public void invalidate(Iterable<String> ids) {
+        for (String id : ids) {
+            versions.incrementAndGet(stripe(id));
+        }
+        cache.invalidateAll(ids);
+    }
+
+    @EventListener
+    public void onIndexChanged(IndexChangedEvent event) {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    private void flush() {
+        Map<String, CompletableFuture<EventDetail>> batch;
+        synchronized (this) {
+            batch = takePending();
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    private Map<String, CompletableFuture<EventDetail>> takePending() {
+        Map<String, CompletableFuture<EventDetail>> batch = pending;
+        pending = new HashMap<>();
+        return batch;
+    }
+
+    private void send(Map<String, CompletableFuture<EventDetail>> batch) {
+        fetch(new ArrayList<>(batch.keySet())).whenComplete((events, error) -> batch.forEach((id, future) -> {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(events.get(id));
+            }
+        }));
+    }
+
+    private CompletableFuture<Map<String, EventDetail>> fetch(List<String> ids) {
+        long generationAt = generation.get();
+        Map<String, Long> fetchedAt = new HashMap<>();
+        ids.forEach(id -> fetchedAt.put(id, versions.get(stripe(id))));
+        CompletableFuture<Map<String, EventDetail>> events = indexResolver.isPartitioned()
+                ? asyncClient.search(idsRequest(ids), this::fromHits)
+                : asyncClient.mget(mgetRequest(ids), this::fromDocs);
+        return events.thenApply(found -> {
+            found.forEach((id, event) -> cache(id, event, fetchedAt.get(id), generationAt));
+            return found;
+        });
+    }
+
+    /**
+     * Checked again after the put: an invalidation landing between the check and the put would
+     * otherwise have nothing left to remove.
+     */
+    private void cache(String id, EventDetail event, Long version, long generationAt) {
+        int stripe = stripe(id);
+        if (version == null || versions.get(stripe) != version || generation.get() != generationAt) {
+            return;
+        }
+        cache.put(id, event);
+        if (versions.get(stripe) != version || generation.get() != generationAt) {
+            cache.invalidate(id);
+        }
+    }
+
+    private static int stripe(String id) {
+        return (int) DocumentIds.mix(DocumentIds.hash(id)) & (VERSION_STRIPES - 1);
+    }
+
+    private SearchRequest idsRequest(List<String> ids) {
+        SearchRequest searchRequest = new SearchRequest(EventIndexResolver.ALIAS);
+        searchRequest.source(new SearchSourceBuilder().query(QueryBuilders.idsQuery().addIds(ids.toArray(new String[0]))).size(ids.size()));
+        return searchRequest;
+    }
+
+    private MultiGetRequest mgetRequest(List<String> ids) {
+        MultiGetRequest multiGetRequest = new MultiGetRequest();
+        ids.forEach(id -> multiGetRequest.add(EventIndexResolver.ALIAS, id));
+        return multiGetRequest;
+    }
+
+    private Map<String, EventDetail> fromHits(SearchResponse searchResponse) {
+        Map<String, EventDetail> events = new HashMap<>();
+        for (SearchHit hit : searchResponse.getHits().getHits()) {
+            events.put(hit.getId(), objectMapper.convertValue(hit.getSourceAsMap(), EventDetail.class));
+        }
+        return events;
+    }
+
+    /**
+     * All ids of an mget address the same index, so a failed item means the lookup failed.
+     */
+    private Map<String, EventDetail> fromDocs(MultiGetResponse multiGetResponse) throws IOException {
+        Map<String, EventDetail> events = new HashMap<>();
+        for (MultiGetItemResponse item : multiGetResponse.getResponses()) {
+            if (item.isFailed()) {
+                throw new IOException("Failed to get event " + item.getId(), item.getFailure().getFailure());
+            }
+            if (item.getResponse().isExists()) {
+                events.put(item.getId(), objectMapper.convertValue(item.getResponse().getSourceAsMap(), EventDetail.class));
+            }
+        }
+        return events;
+    }
+}
@@ -0,0 +1,149 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.config.EventIndexTemplate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Remembers the content fingerprint last acknowledged by Elasticsearch for each document id, so
+ * that re-ingesting an unchanged event can be skipped. The index is a fixed-size, direct-mapped
+ * table of 64-bit entries, each a hash of an id together with its fingerprint: memory stays at
+ * eight bytes per slot however many documents pass through. Two ids landing in the same slot only
+ * evict each other, which costs a redundant write later; an event is skipped only when the full
+ * 64-bit entry matches.
+ *
+ * <p>Entries are recorded from bulk responses, for items Elasticsearch accepted, so a failed write
+ * is never remembered as done. A fingerprint covers the target index and its creation date, so
+ * deleting an index, as retention does with old partitions, invalidates whatever was recorded for
+ * it. The table is saved next to the ingest checkpoint.
+ */
+@Component
+@Slf4j
+public class FingerprintIndex {
+
+    private static final long SAVE_INTERVAL_MILLIS = 10_000;
+
+    @Value("${spring.data.elasticsearch.ingest-fingerprint-file}")
+    private String fingerprintFile;
+
+    @Value("${spring.data.elasticsearch.ingest-fingerprint-slots}")
+    private int slotCount;
+
+    private long[] slots;
+    private volatile boolean dirty;
+    private long lastSaved;
+
+    /**
+     * Creation date of every event index that existed when the current run started, by name.
+     */
+    private volatile Map<String, Long> indexCreationDates = Collections.emptyMap();
+
+    /**
+     * Called as each run starts. An index that was deleted and created again under the same name,
+     * as a dropped partition is once its events come back, has a new creation date, so nothing
+     * recorded for the old one matches it.
+     */
+    public void setIndexCreationDates(Map<String, Long> indexCreationDates) {
+        this.indexCreationDates = indexCreationDates;
+    }
+
+    /**
+     * Fingerprint of a document as written to {@code index}, in its current incarnation and under
+     * the current mapping template, or 0 if the index did not exist when the run started: such a
+     * document is always written.
+     */
+    public long fingerprint(String index, byte[] buffer, int offset, int length) {
+        Long created = indexCreationDates.get(index);
+        if (created == null) {
+            return 0;
+        }
+        long hash = DocumentIds.hash(buffer, offset, length);
+        hash = hash * 31 + DocumentIds.hash(index);
+        hash = hash * 31 + created;
+        return DocumentIds.mix(hash * 31 + EventIndexTemplate.TEMPLATE_VERSION) | 1;
+    }
+
+    @PostConstruct
+    public void load() {
+        slots = new long[Integer.highestOneBit(Math.max(slotCount, 1024))];
+        Path path = Paths.get(fingerprintFile);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != slots.length) {
+                log.info("Fingerprint table size changed, starting with an empty one");
+                return;
+            }
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = in.readLong();
+            }
+        } catch (IOException e) {
+            log.warn("Could not read {}, starting with an empty fingerprint table", path, e);
+            slots = new long[slots.length];
+        }
+    }
+
+    public boolean isUnchanged(long id, long fingerprint) {
+        return fingerprint != 0 && slots[slot(id)] == entry(id, fingerprint);
+    }
+
+    public void record(long id, long fingerprint) {
+        if (fingerprint == 0) {
+            return;
+        }
+        slots[slot(id)] = entry(id, fingerprint);
+        dirty = true;
+    }
+
+    /**
+     * Saves the table if it changed, at most once per {@link #SAVE_INTERVAL_MILLIS}. A table that
+     * is a little behind only means some unchanged events are sent again.
+     */
+    public synchronized void saveIfDirty() throws IOException {
+        if (dirty && System.currentTimeMillis() - lastSaved >= SAVE_INTERVAL_MILLIS) {
+            save();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (dirty) {
+            save();
+        }
+    }
+
+    private void save() throws IOException {
+        dirty = false;
+        lastSaved = System.currentTimeMillis();
+        Path path = Paths.get(fingerprintFile).toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(slots.length);
+            for (long slot : slots) {
+                out.writeLong(slot);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private int slot(long id) {
+        return (int) DocumentIds.mix(id) & (slots.length - 1);
+    }
+
+    private static long entry(long id, long fingerprint) {
+        return DocumentIds.mix(id * 31 + fingerprint) | 1;
+    }
+}
@@ -0,0 +1,21 @@
+package com.fidenz.eventsearch.service;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when an ingest run has written documents, i.e. when results read before it may be
+ * out of date.
+ */
+public class IndexChangedEvent extends ApplicationEvent {
+
+    private final long documents;
+
+    public IndexChangedEvent(Object source, long documents) {
+        super(source);
+        this.documents = documents;
+    }
+
+    public long getDocuments() {
+        return documents;
+    }
+}
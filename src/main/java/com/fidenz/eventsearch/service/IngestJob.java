@@ -0,0 +1,59 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.dto.IngestJobDTO;
+import lombok.Getter;
+
+@Getter
+public class IngestJob {
+
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    private final String id;
+    private final IngestProgress progress = new IngestProgress();
+    private volatile State state = State.QUEUED;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile int runs;
+    private volatile String message;
+
+    public IngestJob(String id) {
+        this.id = id;
+    }
+
+    public void start() {
+        startedAt = System.currentTimeMillis();
+        state = State.RUNNING;
+    }
+
+    public void onRun() {
+        runs++;
+    }
+
+    public void finish(boolean succeeded, String message) {
+        this.message = message;
+        finishedAt = System.currentTimeMillis();
+        state = succeeded ? State.SUCCEEDED : State.FAILED;
+    }
+
+    public IngestJobDTO toDTO() {
+        IngestJobDTO job = new IngestJobDTO();
+        job.setId(id);
+        job.setState(state.name());
+        job.setStartedAt(startedAt);
+        job.setFinishedAt(finishedAt);
+        job.setRuns(runs);
+        job.setMessage(message);
+        job.setFiles(progress.getFiles());
+        job.setLines(progress.getLines());
+        job.setBytes(progress.getBytes());
+        job.setDocuments(progress.getDocuments());
+        job.setFailedDocuments(progress.getFailedDocuments());
+        if (startedAt > 0) {
+            long elapsed = Math.max(1, (finishedAt > 0 ? finishedAt : System.currentTimeMillis()) - startedAt);
+            job.setDocsPerSecond(job.getDocuments() * 1000.0 / elapsed);
+        }
+        return job;
+    }
+}
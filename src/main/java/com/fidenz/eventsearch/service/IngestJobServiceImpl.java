@@ -0,0 +1,149 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.dto.IngestJobDTO;
+import com.fidenz.eventsearch.dto.IngestStatusDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs collector ingests one at a time in the background. A trigger that arrives while a job is
+ * running joins that job instead of starting another: the job does one more pass once its current
+ * one finishes, so the data that prompted the trigger is still picked up.
+ */
+@Service
+@Slf4j
+public class IngestJobServiceImpl implements IngestJobServiceInterface {
+
+    private static final int HISTORY_SIZE = 20;
+
+    @Autowired
+    private BulkInsertInterface bulkService;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("ingest-job-"));
+
+    private final Map<String, IngestJob> jobs = new LinkedHashMap<String, IngestJob>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, IngestJob> eldest) {
+            return size() > HISTORY_SIZE;
+        }
+    };
+
+    private IngestJob current;
+    private IngestJob latest;
+    private boolean rerunRequested;
+    private boolean rerunAllFiles;
+    private boolean rerunBulkLoad;
+    private final Set<Path> rerunFiles = new HashSet<>();
+
+    @Override
+    public IngestJobDTO trigger() {
+        return trigger(null, false);
+    }
+
+    @Override
+    public IngestJobDTO trigger(Set<Path> files) {
+        return trigger(files, false);
+    }
+
+    /**
+     * @param files    the collector files to read, or {@code null} to scan the whole directory
+     * @param bulkLoad run in bulk-load mode from the start; a rerun requested this way keeps it
+     */
+    @Override
+    public synchronized IngestJobDTO trigger(Set<Path> files, boolean bulkLoad) {
+        if (current != null) {
+            rerunRequested = true;
+            rerunBulkLoad |= bulkLoad;
+            if (files == null) {
+                rerunAllFiles = true;
+            } else {
+                rerunFiles.addAll(files);
+            }
+            return current.toDTO();
+        }
+        IngestJob job = new IngestJob(UUID.randomUUID().toString());
+        current = job;
+        latest = job;
+        jobs.put(job.getId(), job);
+        executor.submit(() -> run(job, files, bulkLoad));
+        return job.toDTO();
+    }
+
+    @Override
+    public synchronized IngestJobDTO getJob(String id) {
+        IngestJob job = jobs.get(id);
+        return job == null ? null : job.toDTO();
+    }
+
+    @Override
+    public synchronized IngestJobDTO getLatestJob() {
+        return latest == null ? null : latest.toDTO();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A pass that fails still does the rerun requested meanwhile: the triggers behind it were
+     * told their request joined this job, and may name files no later trigger will. The job is
+     * reported failed if any of its passes failed.
+     */
+    private void run(IngestJob job, Set<Path> files, boolean bulkLoad) {
+        job.start();
+        boolean failed = false;
+        String message = null;
+        while (true) {
+            job.onRun();
+            try {
+                IngestStatusDTO status = bulkService.ingestDataCall(job.getProgress(), files, bulkLoad);
+                if (!failed) {
+                    failed = !status.isStatus();
+                    message = status.getMessage();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed = true;
+                message = "Interrupted";
+            } catch (Exception e) {
+                log.error("error encountered", e);
+                if (!failed) {
+                    failed = true;
+                    message = e.getMessage();
+                }
+            }
+            synchronized (this) {
+                if (!rerunRequested || Thread.currentThread().isInterrupted()) {
+                    if (current == job) {
+                        current = null;
+                    }
+                    break;
+                }
+                files = rerunAllFiles ? null : new HashSet<>(rerunFiles);
+                bulkLoad = rerunBulkLoad;
+                clearRerun();
+            }
+        }
+        job.finish(!failed, message);
+    }
+
+    private void clearRerun() {
+        rerunRequested = false;
+        rerunAllFiles = false;
+        rerunBulkLoad = false;
+        rerunFiles.clear();
+    }
+}
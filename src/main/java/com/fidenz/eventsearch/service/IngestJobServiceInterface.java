@@ -0,0 +1,14 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.dto.IngestJobDTO;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+public interface IngestJobServiceInterface {
+    IngestJobDTO trigger();
+    IngestJobDTO trigger(Set<Path> files);
+    IngestJobDTO trigger(Set<Path> files, boolean bulkLoad);
+    IngestJobDTO getJob(String id);
+    IngestJobDTO getLatestJob();
+}
@@ -0,0 +1,145 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.dto.IngestMetricsDTO;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide bulk indexing counters, fed by every ingest session's listener.
+ */
+@Component
+public class IngestMetrics {
+
+    private static final long[] LATENCY_BUCKETS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    /**
+     * Seconds over which {@code docsPerSecond} is measured.
+     */
+    private static final int RATE_WINDOW_SECONDS = 60;
+
+    private final AtomicLongArray latencyCounts = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+    private final LongAdder latencyTotal = new LongAdder();
+    private final AtomicLong latencyMax = new AtomicLong();
+    private final LongAdder bulkRequests = new LongAdder();
+    private final LongAdder actions = new LongAdder();
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder failedDocuments = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private final LongAdder rejectedDocuments = new LongAdder();
+    private final Map<String, LongAdder> failuresByType = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final long startedAt = System.currentTimeMillis();
+    private final long[] rateSeconds = new long[RATE_WINDOW_SECONDS];
+    private final long[] rateDocuments = new long[RATE_WINDOW_SECONDS];
+
+    public void onBulkStarted() {
+        inFlightRequests.incrementAndGet();
+    }
+
+    /**
+     * @param failed items of the request Elasticsearch did not apply; they are counted through
+     *               {@link #onDocumentFailed} and not as documents
+     */
+    public void onBulkCompleted(int actions, int failed, long sizeInBytes, long latencyMillis) {
+        inFlightRequests.decrementAndGet();
+        bulkRequests.increment();
+        this.actions.add(actions);
+        documents.add(actions - failed);
+        countRate(actions - failed);
+        bytes.add(sizeInBytes);
+        latencyTotal.add(latencyMillis);
+        latencyMax.accumulateAndGet(latencyMillis, Math::max);
+        latencyCounts.incrementAndGet(bucketOf(latencyMillis));
+    }
+
+    public void onBulkFailed(String type) {
+        inFlightRequests.decrementAndGet();
+        failedRequests.increment();
+        failuresByType.computeIfAbsent(type, key -> new LongAdder()).increment();
+    }
+
+    public void onDocumentFailed(String type, boolean rejected) {
+        failedDocuments.increment();
+        if (rejected) {
+            rejectedDocuments.increment();
+        }
+        failuresByType.computeIfAbsent(type, key -> new LongAdder()).increment();
+    }
+
+    public IngestMetricsDTO snapshot() {
+        IngestMetricsDTO metrics = new IngestMetricsDTO();
+        long requests = bulkRequests.sum();
+        long docs = documents.sum();
+        metrics.setBulkRequests(requests);
+        metrics.setFailedRequests(failedRequests.sum());
+        metrics.setDocuments(docs);
+        metrics.setBytes(bytes.sum());
+        metrics.setFailedDocuments(failedDocuments.sum());
+        metrics.setRejectedDocuments(rejectedDocuments.sum());
+        metrics.setInFlightRequests(inFlightRequests.get());
+        metrics.setDocsPerSecond(docsPerSecond());
+        metrics.setAverageBatchSize(requests == 0 ? 0 : (double) actions.sum() / requests);
+        metrics.setAverageLatencyMillis(requests == 0 ? 0 : (double) latencyTotal.sum() / requests);
+        metrics.setMaxLatencyMillis(latencyMax.get());
+        metrics.setLatencyHistogram(latencyHistogram());
+        Map<String, Long> failures = new TreeMap<>();
+        failuresByType.forEach((type, count) -> failures.put(type, count.sum()));
+        metrics.setFailuresByType(failures);
+        return metrics;
+    }
+
+    /**
+     * Documents written per second over the last {@link #RATE_WINDOW_SECONDS}, or since startup
+     * when that is shorter, so the rate falls back to zero once ingest goes idle rather than being
+     * averaged over the whole uptime.
+     */
+    private synchronized double docsPerSecond() {
+        long now = System.currentTimeMillis();
+        long second = now / 1000;
+        long total = 0;
+        for (int i = 0; i < RATE_WINDOW_SECONDS; i++) {
+            if (second - rateSeconds[i] < RATE_WINDOW_SECONDS) {
+                total += rateDocuments[i];
+            }
+        }
+        double window = Math.min(RATE_WINDOW_SECONDS, Math.max(1, (now - startedAt) / 1000.0));
+        return total / window;
+    }
+
+    private synchronized void countRate(long written) {
+        long second = System.currentTimeMillis() / 1000;
+        int slot = (int) (second % RATE_WINDOW_SECONDS);
+        if (rateSeconds[slot] != second) {
+            rateSeconds[slot] = second;
+            rateDocuments[slot] = 0;
+        }
+        rateDocuments[slot] += written;
+    }
+
+    private Map<String, Long> latencyHistogram() {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+            histogram.put("le_" + LATENCY_BUCKETS[i] + "ms", latencyCounts.get(i));
+        }
+        histogram.put("gt_" + LATENCY_BUCKETS[LATENCY_BUCKETS.length - 1] + "ms", latencyCounts.get(LATENCY_BUCKETS.length));
+        return histogram;
+    }
+
+    private int bucketOf(long latencyMillis) {
+        for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+            if (latencyMillis <= LATENCY_BUCKETS[i]) {
+                return i;
+            }
+        }
+        return LATENCY_BUCKETS.length;
+    }
+}
@@ -0,0 +1,59 @@
+package com.fidenz.eventsearch.service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters of an ingest job, updated by the readers while the job runs and read by the
+ * status endpoint. Documents and failures come from the bulk session that is currently open, plus
+ * those of the sessions the job already finished.
+ */
+public class IngestProgress {
+
+    private final LongAdder files = new LongAdder();
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder completedDocuments = new LongAdder();
+    private final LongAdder completedFailures = new LongAdder();
+    private volatile BulkIngestSession session;
+
+    public void onFile() {
+        files.increment();
+    }
+
+    public void onLine(int length) {
+        lines.increment();
+        bytes.add(length + 1);
+    }
+
+    public void attach(BulkIngestSession session) {
+        this.session = session;
+    }
+
+    public void detach(BulkIngestSession session) {
+        completedDocuments.add(session.getDocuments());
+        completedFailures.add(session.getFailedDocuments());
+        this.session = null;
+    }
+
+    public long getFiles() {
+        return files.sum();
+    }
+
+    public long getLines() {
+        return lines.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getDocuments() {
+        BulkIngestSession current = session;
+        return completedDocuments.sum() + (current == null ? 0 : current.getDocuments());
+    }
+
+    public long getFailedDocuments() {
+        BulkIngestSession current = session;
+        return completedFailures.sum() + (current == null ? 0 : current.getFailedDocuments());
+    }
+}
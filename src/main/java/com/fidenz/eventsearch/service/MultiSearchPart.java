@@ -0,0 +1,46 @@
+package com.fidenz.eventsearch.service;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The searches one lookup needs and how to turn their responses into its result, so that several
+ * lookups can be sent together in one msearch. Responses are handed back in the order of
+ * {@link #requests()}.
+ */
+public class MultiSearchPart<R> {
+
+    private final List<SearchRequest> requests;
+
+    private final AsyncSearchClient.ResponseParser<List<SearchResponse>, R> parser;
+
+    private MultiSearchPart(List<SearchRequest> requests, AsyncSearchClient.ResponseParser<List<SearchResponse>, R> parser) {
+        this.requests = requests;
+        this.parser = parser;
+    }
+
+    public static <R> MultiSearchPart<R> of(SearchRequest request, AsyncSearchClient.ResponseParser<SearchResponse, R> parser) {
+        return new MultiSearchPart<>(Collections.singletonList(request), responses -> parser.parse(responses.get(0)));
+    }
+
+    public static <R> MultiSearchPart<R> of(List<SearchRequest> requests, AsyncSearchClient.ResponseParser<List<SearchResponse>, R> parser) {
+        return new MultiSearchPart<>(requests, parser);
+    }
+
+    public List<SearchRequest> requests() {
+        return requests;
+    }
+
+    public R parse(List<SearchResponse> responses) throws IOException {
+        return parser.parse(responses);
+    }
+
+    public <U> MultiSearchPart<U> map(Function<? super R, ? extends U> mapper) {
+        return new MultiSearchPart<>(requests, responses -> mapper.apply(parser.parse(responses)));
+    }
+}
@@ -0,0 +1,58 @@
+package com.fidenz.eventsearch.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits a newline-delimited JSON stream into lines as the bytes arrive. Unlike a collector file,
+ * the stream is complete at EOF, so a last line without its newline is handed out as well.
+ */
+public final class NdjsonLineReader {
+
+    private NdjsonLineReader() {
+    }
+
+    /**
+     * @return the number of bytes read
+     */
+    public static long read(InputStream in, CollectorFileReader.LineHandler handler) throws IOException {
+        byte[] chunk = new byte[64 * 1024];
+        byte[] line = new byte[4 * 1024];
+        int length = 0;
+        long position = 0;
+        long lineStart = 0;
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            int segmentStart = 0;
+            for (int i = 0; i < read; i++) {
+                if (chunk[i] != '\n') {
+                    continue;
+                }
+                line = append(line, length, chunk, segmentStart, i - segmentStart);
+                length += i - segmentStart;
+                if (length > 0) {
+                    handler.onLine(lineStart, line, length);
+                }
+                length = 0;
+                lineStart = position + i + 1;
+                segmentStart = i + 1;
+            }
+            line = append(line, length, chunk, segmentStart, read - segmentStart);
+            length += read - segmentStart;
+            position += read;
+        }
+        if (length > 0) {
+            handler.onLine(lineStart, line, length);
+        }
+        return position;
+    }
+
+    private static byte[] append(byte[] line, int length, byte[] chunk, int from, int count) {
+        if (length + count > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, length + count));
+        }
+        System.arraycopy(chunk, from, line, length, count);
+        return line;
+    }
+}
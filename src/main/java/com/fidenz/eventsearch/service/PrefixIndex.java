@@ -0,0 +1,106 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.dto.CompletionDTO;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Distinct values of one field with their document counts, sorted by their lower-cased form so
+ * that the values starting with a prefix are one contiguous run, found by binary search.
+ * Immutable: updates build a new index, so lookups never lock.
+ */
+final class PrefixIndex {
+
+    static final PrefixIndex EMPTY = new PrefixIndex(new String[0], new String[0], new long[0]);
+
+    private final String[] keys;
+    private final String[] values;
+    private final long[] counts;
+
+    private PrefixIndex(String[] keys, String[] values, long[] counts) {
+        this.keys = keys;
+        this.values = values;
+        this.counts = counts;
+    }
+
+    /**
+     * Keeps the {@code maxValues} most frequent values when there are more.
+     */
+    static PrefixIndex of(Map<String, Long> valueCounts, int maxValues) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(valueCounts.entrySet());
+        if (entries.size() > maxValues) {
+            entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+            entries = entries.subList(0, maxValues);
+        }
+        entries.sort(Comparator.comparing((Map.Entry<String, Long> entry) -> key(entry.getKey())).thenComparing(Map.Entry::getKey));
+
+        String[] keys = new String[entries.size()];
+        String[] values = new String[entries.size()];
+        long[] counts = new long[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            values[i] = entries.get(i).getKey();
+            keys[i] = key(values[i]);
+            counts[i] = entries.get(i).getValue();
+        }
+        return new PrefixIndex(keys, values, counts);
+    }
+
+    PrefixIndex merge(Map<String, Long> delta, int maxValues) {
+        if (delta.isEmpty()) {
+            return this;
+        }
+        Map<String, Long> valueCounts = new HashMap<>(values.length + delta.size());
+        for (int i = 0; i < values.length; i++) {
+            valueCounts.put(values[i], counts[i]);
+        }
+        delta.forEach((value, count) -> valueCounts.merge(value, count, Long::sum));
+        return of(valueCounts, maxValues);
+    }
+
+    int size() {
+        return values.length;
+    }
+
+    /**
+     * The {@code limit} most frequent values starting with {@code prefix}, ignoring case, most
+     * frequent first.
+     */
+    List<CompletionDTO> complete(String prefix, int limit) {
+        String key = key(prefix);
+        int from = Arrays.binarySearch(keys, key);
+        if (from < 0) {
+            from = -from - 1;
+        } else {
+            // Equal keys differ only in case; start at the first of them
+            while (from > 0 && keys[from - 1].equals(key)) {
+                from--;
+            }
+        }
+        PriorityQueue<Integer> top = new PriorityQueue<>(Comparator.comparingLong((Integer i) -> counts[i]));
+        for (int i = from; i < keys.length && keys[i].startsWith(key); i++) {
+            top.add(i);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        List<CompletionDTO> completions = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            int i = top.poll();
+            completions.add(new CompletionDTO(values[i], counts[i]));
+        }
+        Collections.reverse(completions);
+        return completions;
+    }
+
+    private static String key(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
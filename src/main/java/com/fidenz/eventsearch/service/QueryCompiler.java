@@ -0,0 +1,92 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.config.EventIndexTemplate;
+import com.fidenz.eventsearch.dto.FilterDTO;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Compiles request filters into filter-context queries shared by the search and stat services.
+ * Values on one field are OR-ed and fields are AND-ed. Exact-value fields become a {@code term}
+ * or {@code terms} query, which Elasticsearch neither analyzes nor scores and can cache per
+ * segment; only fields mapped as text still go through {@code match}. Compiled fragments are
+ * kept per normalized filter set, so a dashboard repeating its filters reuses the same query.
+ */
+@Component
+public class QueryCompiler {
+
+    private static final int FRAGMENT_CACHE_SIZE = 1024;
+
+    @Autowired
+    private EventIndexTemplate eventIndexTemplate;
+
+    @Autowired
+    private EventIndexResolver indexResolver;
+
+    private final Cache<String, QueryBuilder> fragments = Caffeine.newBuilder()
+            .maximumSize(FRAGMENT_CACHE_SIZE)
+            .build();
+
+    /**
+     * Adds the filters to {@code query} as a single filter clause; nothing when there are none.
+     */
+    public void applyFilters(BoolQueryBuilder query, List<FilterDTO> filters) {
+        TreeMap<String, TreeSet<String>> grouped = group(filters);
+        if (grouped.isEmpty()) {
+            return;
+        }
+        // The key also covers the mapping in use, which decides the field names below. Its parts
+        // are length-prefixed: one value "a, b" and the two values a and b must not collide.
+        String key = RequestKey.of(indexResolver.isDynamicMapping() ? "dynamic" : "managed").filters(filters).build();
+        query.filter(fragments.get(key, k -> compile(grouped)));
+    }
+
+    /**
+     * Filters by field, values deduplicated; both levels sorted so that equivalent filter sets
+     * normalize to the same map.
+     */
+    public static TreeMap<String, TreeSet<String>> group(List<FilterDTO> filters) {
+        TreeMap<String, TreeSet<String>> grouped = new TreeMap<>();
+        if (filters == null) {
+            return grouped;
+        }
+        for (FilterDTO filter : filters) {
+            if (filter != null && filter.getKey() != null && filter.getValues() != null) {
+                grouped.computeIfAbsent(filter.getKey(), k -> new TreeSet<>()).add(filter.getValues());
+            }
+        }
+        return grouped;
+    }
+
+    private QueryBuilder compile(TreeMap<String, TreeSet<String>> grouped) {
+        BoolQueryBuilder fragment = QueryBuilders.boolQuery();
+        grouped.forEach((field, values) -> fragment.filter(compile(field, values)));
+        return fragment;
+    }
+
+    private QueryBuilder compile(String field, TreeSet<String> values) {
+        String type = eventIndexTemplate.fieldType(field);
+        if ("text".equals(type)) {
+            if (values.size() == 1) {
+                return QueryBuilders.matchQuery(field, values.first());
+            }
+            BoolQueryBuilder any = QueryBuilders.boolQuery();
+            values.forEach(value -> any.should(QueryBuilders.matchQuery(field, value)));
+            return any;
+        }
+        String exactField = type == null || "keyword".equals(type) ? indexResolver.keywordField(field) : field;
+        if (values.size() == 1) {
+            return QueryBuilders.termQuery(exactField, values.first());
+        }
+        return QueryBuilders.termsQuery(exactField, values);
+    }
+}
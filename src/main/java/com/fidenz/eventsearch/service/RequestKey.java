@@ -0,0 +1,109 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.dto.FilterDTO;
+import com.fidenz.eventsearch.dto.TimeRangeDTO;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Normalized identity of a lookup, for caching and coalescing. Requests that differ only in the
+ * order of their filters or in how their time range is written get the same key. Filters on one
+ * field are OR-ed and fields are AND-ed, so sorting both levels keeps the meaning. Every part is
+ * length-prefixed, so no query or filter value can make two different requests collide.
+ */
+public final class RequestKey {
+
+    private static final DateTimeFormatter ISO_PARSER = ISODateTimeFormat.dateTimeParser().withZoneUTC();
+
+    /**
+     * Date, then optional hour, minute, second and fraction, then an optional zone.
+     */
+    private static final Pattern ISO_TIMESTAMP = Pattern.compile(
+            "\\d{4}-\\d{2}-\\d{2}(T(\\d{2})(?::(\\d{2})(?::(\\d{2})(?:[.,](\\d+))?)?)?)?(Z|[+-]\\d{2}(:?\\d{2})?)?");
+
+    private final StringBuilder key = new StringBuilder();
+
+    private RequestKey(String kind) {
+        part(kind);
+    }
+
+    public static RequestKey of(String kind) {
+        return new RequestKey(kind);
+    }
+
+    public RequestKey add(Object value) {
+        if (value == null) {
+            key.append('-');
+        } else {
+            part(value instanceof String ? ((String) value).trim() : value.toString());
+        }
+        return this;
+    }
+
+    public RequestKey filters(List<FilterDTO> filters) {
+        QueryCompiler.group(filters).forEach((field, values) -> {
+            part(field);
+            part(Integer.toString(values.size()));
+            values.forEach(this::part);
+        });
+        return this;
+    }
+
+    /**
+     * Date math ("now-1d") is kept as written, so a cached result for it may lag behind the clock.
+     */
+    public RequestKey timeRange(TimeRangeDTO timeRange) {
+        part(canonicalTime(timeRange == null ? null : timeRange.getFrom()));
+        part(canonicalTime(timeRange == null ? null : timeRange.getTo()));
+        return this;
+    }
+
+    public String build() {
+        return key.toString();
+    }
+
+    private void part(String value) {
+        key.append(value.length()).append(':').append(value);
+    }
+
+    /**
+     * Only bounds that differ in nothing but their zone share a key. Elasticsearch rounds the
+     * fields a bound leaves out ({@code lte 2021-01-01} ends the day), so the fields present stay
+     * part of the key; anything that is not an extended ISO timestamp is kept as written.
+     */
+    private static String canonicalTime(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return "";
+        }
+        String trimmed = value.trim();
+        Matcher matcher = ISO_TIMESTAMP.matcher(trimmed);
+        if (!matcher.matches()) {
+            return trimmed;
+        }
+        try {
+            DateTime instant = ISO_PARSER.parseDateTime(trimmed).withZone(DateTimeZone.UTC);
+            return instant + "/" + precision(matcher);
+        } catch (IllegalArgumentException e) {
+            return trimmed;
+        }
+    }
+
+    private static String precision(Matcher matcher) {
+        if (matcher.group(5) != null) {
+            return "f" + matcher.group(5).length();
+        }
+        if (matcher.group(4) != null) {
+            return "s";
+        }
+        if (matcher.group(3) != null) {
+            return "m";
+        }
+        return matcher.group(2) != null ? "h" : "d";
+    }
+}
@@ -0,0 +1,99 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.dto.FilterDTO;
+import com.fidenz.eventsearch.dto.SearchCacheDTO;
+import com.fidenz.eventsearch.dto.TimeRangeDTO;
+import com.fidenz.eventsearch.entity.EventDetail;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Result pages of recent searches, bounded by the number of events they hold and evicted by
+ * frequency and recency (Caffeine's W-TinyLFU) or after the TTL. Keys carry the index generation,
+ * which every ingest run that writes documents bumps; a search that was already running when the
+ * generation moved on stores its result under the old key, where nothing will look for it.
+ */
+@Component
+@Slf4j
+public class SearchCache {
+
+    /**
+     * Events held across all cached pages; 0 disables the cache.
+     */
+    @Value("${spring.data.elasticsearch.search-cache-max-events}")
+    private long maxEvents;
+
+    @Value("${spring.data.elasticsearch.search-cache-ttl}")
+    private long ttl;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private Cache<String, List<EventDetail>> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxEvents)
+                .weigher((String key, List<EventDetail> events) -> events.size() + 1)
+                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return maxEvents > 0;
+    }
+
+    /**
+     * Read before running the query the result is cached for, not after.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    public List<EventDetail> get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    public List<EventDetail> put(String key, List<EventDetail> events) {
+        List<EventDetail> cached = Collections.unmodifiableList(events);
+        cache.put(key, cached);
+        return cached;
+    }
+
+    @EventListener
+    public void onIndexChanged(IndexChangedEvent event) {
+        long next = generation.incrementAndGet();
+        cache.invalidateAll();
+        log.debug("Search cache generation {} after {} documents were written", next, event.getDocuments());
+    }
+
+    public SearchCacheDTO snapshot() {
+        CacheStats stats = cache.stats();
+        long weight = cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+        return new SearchCacheDTO(generation.get(), cache.estimatedSize(), weight, stats.hitCount(),
+                stats.missCount(), stats.hitRate(), stats.evictionCount());
+    }
+
+    public static String findAllKey(long generation, int page) {
+        return RequestKey.of("all").add(generation).add(page).build();
+    }
+
+    public static String searchKey(long generation, String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRange) {
+        return RequestKey.of("search").add(generation).add(page).add(query == null ? "" : query)
+                .timeRange(timeRange).filters(filters).build();
+    }
+}
@@ -4,12 +4,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fidenz.eventsearch.dto.FilterDTO;
 import com.fidenz.eventsearch.dto.TimeRangeDTO;
 import com.fidenz.eventsearch.entity.EventDetail;
-import org.elasticsearch.action.get.GetRequest;
-import org.elasticsearch.action.get.GetResponse;
+import com.fidenz.eventsearch.entity.EventPage;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.MultiMatchQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
@@ -19,11 +19,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class SearchServiceImpl implements SearchServiceInterface {
@@ -34,29 +39,91 @@ public class SearchServiceImpl implements SearchServiceInterface {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private EventIndexResolver indexResolver;
+
+    @Autowired
+    private QueryCompiler queryCompiler;
+
+    @Autowired
+    private AsyncSearchClient asyncClient;
+
+    @Autowired
+    private EventLookup eventLookup;
+
     @Value("${spring.data.elasticsearch.pagination-size}")
     private int pagination_size;
 
 
-    private  final String[] includedFields = {"Timestamp", "Node", "Agg", "MessageType", "id", "Event.Topic" , "Event.Params.Message", "Event.Params.Message", "Event.Params.Category", "Event.Params.DeviceName", "Event.Params.Name"};
+    @Value("${spring.data.elasticsearch.export-page-size}")
+    private int exportPageSize;
+
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
+    private static final String[] CSV_COLUMNS = {"Timestamp", "id", "MessageType", "Node.Name", "Node.IPAddress", "Node.Plugin",
+            "Agg.Name", "Agg.Id", "Agg.IPAddress", "Event.Topic", "Event.Params.Name", "Event.Params.Category",
+            "Event.Params.DeviceName", "Event.Params.Message"};
+
+    private  final String[] includedFields = {"Timestamp", "Node", "Agg", "MessageType", "id", "Event.Topic" , "Event.Params.Message", "Event.Params.Category", "Event.Params.DeviceName", "Event.Params.Name"};
 
     @Override
     public EventDetail findById(String id) throws IOException{
-        GetRequest getRequest = new GetRequest("event_detail", id);
+        return AsyncSearchClient.await(eventLookup.find(id));
+    }
+
+    @Override
+    public List<EventDetail> findByIds(List<String> ids) throws IOException {
+        return AsyncSearchClient.await(eventLookup.findAll(ids));
+    }
+
+    public List<EventDetail> findAll(int page) throws IOException{
+        SearchResponse searchResponse = client.search(findAllRequest(page), RequestOptions.DEFAULT);
 
-        GetResponse getResponse = client.get(getRequest, RequestOptions.DEFAULT);
+        return toEvents(searchResponse.getHits().getHits());
+    }
+
+    public List<EventDetail> search(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException{
+        SearchResponse searchResponse = client.search(searchRequest(query, page, filters, timeRangeDTO), RequestOptions.DEFAULT);
+
+        return toEvents(searchResponse.getHits().getHits());
+    }
 
-        if (getResponse.isExists()) {
-            Map<String, Object> sourceAsMap = getResponse.getSourceAsMap();;
-            return objectMapper.convertValue(sourceAsMap, EventDetail.class);
-        } else {
+    /**
+     * Raw counterparts of the lookups above, answered with the {@code _source} bytes Elasticsearch
+     * returned instead of mapped entities. Id lookups skip the near-cache, which holds entities.
+     */
+    @Override
+    public byte[] findByIdRaw(String id) throws IOException {
+        SearchHit[] searchHit = client.search(findByIdRequest(id), RequestOptions.DEFAULT).getHits().getHits();
+        if (searchHit.length == 0) {
             return null;
         }
+        return BytesReference.toBytes(searchHit[0].getSourceRef());
     }
 
-    public List<EventDetail> findAll(int page) throws IOException{
+    @Override
+    public byte[] findAllRaw(int page) throws IOException {
+        return toJsonArray(client.search(findAllRequest(page), RequestOptions.DEFAULT).getHits().getHits());
+    }
+
+    @Override
+    public byte[] searchRaw(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
+        return toJsonArray(client.search(searchRequest(query, page, filters, timeRangeDTO), RequestOptions.DEFAULT).getHits().getHits());
+    }
+
+    /**
+     * The alias spans every partition, which a get cannot address, so the raw lookup and the
+     * batched part search for the id instead.
+     */
+    private SearchRequest findByIdRequest(String id) {
+        SearchRequest searchRequest = new SearchRequest(EventIndexResolver.ALIAS);
+        searchRequest.source(new SearchSourceBuilder().query(QueryBuilders.idsQuery().addIds(id)).size(1));
+        return searchRequest;
+    }
+
+    private SearchRequest findAllRequest(int page) {
         SearchRequest searchRequest = new SearchRequest();
-        searchRequest.indices("event_detail");
+        searchRequest.indices(EventIndexResolver.ALIAS);
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
         BoolQueryBuilder searchQuery = QueryBuilders.boolQuery();
 
@@ -64,21 +131,245 @@ public class SearchServiceImpl implements SearchServiceInterface {
         searchSourceBuilder.fetchSource(includedFields, null);
 
         searchRequest.source(searchSourceBuilder);
-        SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
+        return searchRequest;
+    }
 
-        SearchHit[] searchHit = searchResponse.getHits().getHits();
-        List<EventDetail> eventList = new ArrayList<>();
-        for (SearchHit hit : searchHit) {
-            eventList.add(objectMapper.convertValue(hit.getSourceAsMap(), EventDetail.class));
+    private SearchRequest searchRequest(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        SearchRequest searchRequest = new SearchRequest();
+        searchRequest.indices(indexResolver.indicesFor(timeRangeDTO));
+        searchRequest.indicesOptions(EventIndexResolver.SEARCH_OPTIONS);
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+
+        searchSourceBuilder.query(searchQuery(query, filters, timeRangeDTO)).from(page * pagination_size).size(pagination_size);
+        searchSourceBuilder.fetchSource(includedFields, null);
+        searchRequest.source(searchSourceBuilder);
+        return searchRequest;
+    }
+
+    /**
+     * Joins the hits' {@code _source} into one JSON array without parsing any of them.
+     */
+    private byte[] toJsonArray(SearchHit[] hits) throws IOException {
+        int size = 2;
+        for (SearchHit hit : hits) {
+            size += hit.getSourceRef().length() + 1;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        out.write('[');
+        for (int i = 0; i < hits.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            hits[i].getSourceRef().writeTo(out);
         }
+        out.write(']');
+        return out.toByteArray();
+    }
 
-        return eventList;
+    @Override
+    public EventPage findAll(String cursor) throws IOException {
+        return toPage(client.search(findAllRequest(cursor), RequestOptions.DEFAULT));
     }
 
-    public List<EventDetail> search(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException{
+    /**
+     * Pages through the matches newest first rather than by relevance, so that any page costs the
+     * same as the first and paging is not capped at the result window.
+     */
+    @Override
+    public EventPage search(String query, String cursor, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
+        return toPage(client.search(searchRequest(query, cursor, filters, timeRangeDTO), RequestOptions.DEFAULT));
+    }
+
+    @Override
+    public CompletableFuture<EventDetail> findByIdAsync(String id) {
+        return eventLookup.find(id);
+    }
+
+    @Override
+    public CompletableFuture<List<EventDetail>> findByIdsAsync(List<String> ids) {
+        return eventLookup.findAll(ids);
+    }
+
+    @Override
+    public CompletableFuture<List<EventDetail>> findAllAsync(int page) {
+        return asyncClient.search(findAllRequest(page), response -> toEvents(response.getHits().getHits()));
+    }
+
+    @Override
+    public CompletableFuture<List<EventDetail>> searchAsync(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return asyncClient.search(searchRequest(query, page, filters, timeRangeDTO), response -> toEvents(response.getHits().getHits()));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> findByIdRawAsync(String id) {
+        return asyncClient.search(findByIdRequest(id), response -> {
+            SearchHit[] searchHit = response.getHits().getHits();
+            return searchHit.length > 0 ? BytesReference.toBytes(searchHit[0].getSourceRef()) : null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<byte[]> findAllRawAsync(int page) {
+        return asyncClient.search(findAllRequest(page), response -> toJsonArray(response.getHits().getHits()));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> searchRawAsync(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return asyncClient.search(searchRequest(query, page, filters, timeRangeDTO), response -> toJsonArray(response.getHits().getHits()));
+    }
+
+    @Override
+    public CompletableFuture<EventPage> findAllAsync(String cursor) {
+        return asyncClient.search(findAllRequest(cursor), this::toPage);
+    }
+
+    @Override
+    public CompletableFuture<EventPage> searchAsync(String query, String cursor, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return asyncClient.search(searchRequest(query, cursor, filters, timeRangeDTO), this::toPage);
+    }
+
+    /**
+     * The parts below fetch only the {@code _source} fields in {@code includes}, or the matching
+     * endpoint's usual fields when it is {@code null}.
+     */
+    public MultiSearchPart<EventDetail> findByIdPart(String id, String[] includes) {
+        return MultiSearchPart.of(project(findByIdRequest(id), includes), response -> {
+            SearchHit[] searchHit = response.getHits().getHits();
+            return searchHit.length > 0 ? objectMapper.convertValue(searchHit[0].getSourceAsMap(), EventDetail.class) : null;
+        });
+    }
+
+    public MultiSearchPart<List<EventDetail>> findAllPart(int page, String[] includes) {
+        return MultiSearchPart.of(project(findAllRequest(page), includes), response -> toEvents(response.getHits().getHits()));
+    }
+
+    public MultiSearchPart<List<EventDetail>> searchPart(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO, String[] includes) {
+        return MultiSearchPart.of(project(searchRequest(query, page, filters, timeRangeDTO), includes), response -> toEvents(response.getHits().getHits()));
+    }
+
+    public MultiSearchPart<EventPage> findAllPart(String cursor, String[] includes) {
+        return MultiSearchPart.of(project(findAllRequest(cursor), includes), this::toPage);
+    }
+
+    public MultiSearchPart<EventPage> searchPart(String query, String cursor, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO, String[] includes) {
+        return MultiSearchPart.of(project(searchRequest(query, cursor, filters, timeRangeDTO), includes), this::toPage);
+    }
+
+    private static SearchRequest project(SearchRequest searchRequest, String[] includes) {
+        if (includes != null) {
+            searchRequest.source().fetchSource(includes, null);
+        }
+        return searchRequest;
+    }
+
+    private SearchRequest findAllRequest(String cursor) {
+        SearchRequest searchRequest = new SearchRequest(EventIndexResolver.ALIAS);
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+        searchSourceBuilder.query(QueryBuilders.boolQuery()).size(pagination_size);
+        searchSourceBuilder.fetchSource(includedFields, null);
+        EventCursor.apply(searchSourceBuilder, cursor);
+        searchRequest.source(searchSourceBuilder);
+        return searchRequest;
+    }
+
+    private SearchRequest searchRequest(String query, String cursor, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
         SearchRequest searchRequest = new SearchRequest();
-        searchRequest.indices("event_detail");
+        searchRequest.indices(indexResolver.indicesFor(timeRangeDTO));
+        searchRequest.indicesOptions(EventIndexResolver.SEARCH_OPTIONS);
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+        searchSourceBuilder.query(searchQuery(query, filters, timeRangeDTO)).size(pagination_size);
+        searchSourceBuilder.fetchSource(includedFields, null);
+        EventCursor.apply(searchSourceBuilder, cursor);
+        searchRequest.source(searchSourceBuilder);
+        return searchRequest;
+    }
+
+    private EventPage toPage(SearchResponse searchResponse) {
+        SearchHit[] searchHit = searchResponse.getHits().getHits();
+        return new EventPage(toEvents(searchHit), EventCursor.next(searchHit, pagination_size));
+    }
+
+    /**
+     * Writes every match to {@code out}, newest first, as NDJSON or CSV. Pages are walked with
+     * {@code search_after}, and the next page is requested before the current one is written, so
+     * the cluster and the client work in parallel with at most two pages in memory. NDJSON lines
+     * are the filtered {@code _source} bytes exactly as Elasticsearch returned them.
+     */
+    @Override
+    public void export(String query, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO, String format, OutputStream out) throws IOException {
+        boolean csv = "csv".equalsIgnoreCase(format);
+        String[] indices = indexResolver.indicesFor(timeRangeDTO);
+        BoolQueryBuilder searchQuery = searchQuery(query, filters, timeRangeDTO);
+        OutputStream buffered = new BufferedOutputStream(out, EXPORT_BUFFER_SIZE);
+        if (csv) {
+            writeCsvRow(buffered, Arrays.asList(CSV_COLUMNS));
+        }
+
+        SearchResponse page = client.search(exportRequest(indices, searchQuery, null), RequestOptions.DEFAULT);
+        while (true) {
+            SearchHit[] hits = page.getHits().getHits();
+            CompletableFuture<SearchResponse> next = null;
+            if (hits.length == exportPageSize) {
+                next = asyncClient.search(exportRequest(indices, searchQuery, hits[hits.length - 1].getSortValues()), response -> response);
+            }
+            for (SearchHit hit : hits) {
+                if (csv) {
+                    writeCsvRow(buffered, csvValues(hit.getSourceAsMap()));
+                } else {
+                    hit.getSourceRef().writeTo(buffered);
+                    buffered.write('\n');
+                }
+            }
+            buffered.flush();
+            if (next == null) {
+                return;
+            }
+            page = AsyncSearchClient.await(next);
+        }
+    }
+
+    private SearchRequest exportRequest(String[] indices, BoolQueryBuilder searchQuery, Object[] searchAfter) {
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+        searchSourceBuilder.query(searchQuery).size(exportPageSize);
+        searchSourceBuilder.fetchSource(includedFields, null);
+        EventCursor.apply(searchSourceBuilder, null);
+        if (searchAfter != null) {
+            searchSourceBuilder.searchAfter(searchAfter);
+        }
+        return new SearchRequest(indices)
+                .indicesOptions(EventIndexResolver.SEARCH_OPTIONS)
+                .source(searchSourceBuilder);
+    }
+
+    private List<String> csvValues(Map<String, Object> source) {
+        List<String> values = new ArrayList<>(CSV_COLUMNS.length);
+        for (String column : CSV_COLUMNS) {
+            Object value = source;
+            for (String key : column.split("\\.")) {
+                value = value instanceof Map ? ((Map<?, ?>) value).get(key) : null;
+            }
+            values.add(value == null ? "" : value.toString());
+        }
+        return values;
+    }
+
+    private void writeCsvRow(OutputStream out, List<String> values) throws IOException {
+        StringBuilder row = new StringBuilder();
+        for (String value : values) {
+            if (row.length() > 0) {
+                row.append(',');
+            }
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                row.append('"').append(value.replace("\"", "\"\"")).append('"');
+            } else {
+                row.append(value);
+            }
+        }
+        row.append("\r\n");
+        out.write(row.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private BoolQueryBuilder searchQuery(String query, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
         BoolQueryBuilder searchQuery = QueryBuilders.boolQuery();
         if (query != null && !query.isEmpty()) {
             MultiMatchQueryBuilder multiMatchQuery = QueryBuilders.multiMatchQuery(query);
@@ -86,31 +377,15 @@ public class SearchServiceImpl implements SearchServiceInterface {
         }
 
         searchQuery.filter(QueryBuilders.rangeQuery("Timestamp").gte(timeRangeDTO.getFrom()).lte(timeRangeDTO.getTo()));
-        prepareFilters(searchQuery, filters);
-
-        searchSourceBuilder.query(searchQuery).from(page * pagination_size).size(pagination_size);
-        searchSourceBuilder.fetchSource(includedFields, null);
-        searchRequest.source(searchSourceBuilder);
-
-        SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
+        queryCompiler.applyFilters(searchQuery, filters);
+        return searchQuery;
+    }
 
-        SearchHit[] searchHit = searchResponse.getHits().getHits();
+    private List<EventDetail> toEvents(SearchHit[] searchHit) {
         List<EventDetail> eventList = new ArrayList<>();
         for (SearchHit hit : searchHit) {
             eventList.add(objectMapper.convertValue(hit.getSourceAsMap(), EventDetail.class));
         }
-
         return eventList;
     }
-
-    private void prepareFilters(BoolQueryBuilder searchQuery, List<FilterDTO> filters) {
-        if (filters == null) {
-            return;
-        }
-        filters.stream().collect(Collectors.groupingBy(FilterDTO::getKey)).forEach((key, values) -> {
-            BoolQueryBuilder bool = QueryBuilders.boolQuery();
-            values.forEach(value -> bool.should(QueryBuilders.matchQuery(key, value.getValues())));
-            searchQuery.must(bool);
-        });
-    }
 }
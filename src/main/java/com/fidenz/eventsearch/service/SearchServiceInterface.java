@@ -4,12 +4,31 @@ import com.fidenz.eventsearch.dto.EventDetailDTO;
 import com.fidenz.eventsearch.dto.FilterDTO;
 import com.fidenz.eventsearch.dto.TimeRangeDTO;
 import com.fidenz.eventsearch.entity.EventDetail;
+import com.fidenz.eventsearch.entity.EventPage;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface SearchServiceInterface {
     EventDetail findById(String id) throws IOException;
     List<EventDetail> findAll(int page) throws IOException;
+    List<EventDetail> findByIds(List<String> ids) throws IOException;
     List<EventDetail> search(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException;
+    byte[] findByIdRaw(String id) throws IOException;
+    byte[] findAllRaw(int page) throws IOException;
+    byte[] searchRaw(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException;
+    EventPage findAll(String cursor) throws IOException;
+    EventPage search(String query, String cursor, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException;
+    CompletableFuture<EventDetail> findByIdAsync(String id);
+    CompletableFuture<List<EventDetail>> findAllAsync(int page);
+    CompletableFuture<List<EventDetail>> findByIdsAsync(List<String> ids);
+    CompletableFuture<List<EventDetail>> searchAsync(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO);
+    CompletableFuture<byte[]> findByIdRawAsync(String id);
+    CompletableFuture<byte[]> findAllRawAsync(int page);
+    CompletableFuture<byte[]> searchRawAsync(String query, int page, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO);
+    CompletableFuture<EventPage> findAllAsync(String cursor);
+    CompletableFuture<EventPage> searchAsync(String query, String cursor, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO);
+    void export(String query, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO, String format, OutputStream out) throws IOException;
 }
@@ -0,0 +1,43 @@
+package com.fidenz.eventsearch.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Shares one in-flight call between every caller that asks for the same key while it is running.
+ * The entry is dropped as soon as the call completes, so nothing is cached: a caller arriving
+ * afterwards starts a fresh call and sees fresh data.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> pending = new CompletableFuture<>();
+        CompletableFuture<V> shared = inFlight.putIfAbsent(key, pending);
+        if (shared != null) {
+            // A copy, so one caller cancelling or completing its future cannot affect the others
+            return shared.copy();
+        }
+        try {
+            call.get().whenComplete((result, error) -> {
+                inFlight.remove(key, pending);
+                if (error != null) {
+                    pending.completeExceptionally(error);
+                } else {
+                    pending.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, pending);
+            pending.completeExceptionally(e);
+        }
+        return pending.copy();
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+}
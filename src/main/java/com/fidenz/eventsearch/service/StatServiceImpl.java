@@ -34,9 +34,10 @@ import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class StatServiceImpl implements StatServiceInterface {
@@ -50,21 +51,123 @@ public class StatServiceImpl implements StatServiceInterface {
     @Autowired
     private RestHighLevelClient client;
 
+    @Autowired
+    private EventIndexResolver indexResolver;
+
+    @Autowired
+    private QueryCompiler queryCompiler;
+
+    @Autowired
+    private AsyncSearchClient asyncClient;
+
 
     @Override
     public GenericCounter findCounter(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
-        TermsAggregationBuilder aggregationBuilderAggName = AggregationBuilders.terms("agg_names").field("Agg.Name.keyword").size(100000000).minDocCount(1);
+        return toCounter(client.search(counterRequest(filters, timeRangeDTO), RequestOptions.DEFAULT));
+    }
+
+    @Override
+    public List<String> findCameras(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
+        return toCameras(client.search(camerasRequest(filters, timeRangeDTO), RequestOptions.DEFAULT));
+    }
+
+    @Override
+    public AverageCounter findAverages(List<FilterDTO> filters) throws IOException {
+        BoolQueryBuilder searchQuery = averagesQuery(filters);
+        CountResponse countResponse = client.count(averagesCountRequest(searchQuery), RequestOptions.DEFAULT);
+        SearchResponse searchResponseFirst = client.search(boundaryRequest(searchQuery, SortOrder.ASC), RequestOptions.DEFAULT);
+        SearchResponse searchResponseLast = client.search(boundaryRequest(searchQuery, SortOrder.DESC), RequestOptions.DEFAULT);
+
+        return toAverages(countResponse.getCount(), boundaryTime(searchResponseFirst), boundaryTime(searchResponseLast));
+    }
+
+    @Override
+    public HashMap<String, Long> findCountByCategory(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
+        return toCountByCategory(client.search(camerasRequest(filters, timeRangeDTO), RequestOptions.DEFAULT));
+    }
+
+    @Override
+    public EventTimeRange findEventTimeRange(String eventStart, String eventEnd, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
+        return toEventTimeRange(client.msearch(eventTimeRangeRequest(eventStart, eventEnd, filters, timeRangeDTO), RequestOptions.DEFAULT));
+    }
+
+    @Override
+    public CompletableFuture<GenericCounter> findCounterAsync(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return asyncClient.search(counterRequest(filters, timeRangeDTO), this::toCounter);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> findCamerasAsync(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return asyncClient.search(camerasRequest(filters, timeRangeDTO), this::toCameras);
+    }
+
+    /**
+     * The count and the two boundary lookups do not depend on each other, so unlike the blocking
+     * variant they run concurrently.
+     */
+    @Override
+    public CompletableFuture<AverageCounter> findAveragesAsync(List<FilterDTO> filters) {
+        BoolQueryBuilder searchQuery = averagesQuery(filters);
+        CompletableFuture<Long> count = asyncClient.count(averagesCountRequest(searchQuery), CountResponse::getCount);
+        CompletableFuture<DateTime> first = asyncClient.search(boundaryRequest(searchQuery, SortOrder.ASC), this::boundaryTime);
+        CompletableFuture<DateTime> last = asyncClient.search(boundaryRequest(searchQuery, SortOrder.DESC), this::boundaryTime);
+
+        return first.thenCombine(last, (firstEventTime, lastEventTime) -> new DateTime[]{firstEventTime, lastEventTime})
+                .thenCombine(count, (times, total_hits) -> toAverages(total_hits, times[0], times[1]));
+    }
+
+    @Override
+    public CompletableFuture<HashMap<String, Long>> findCountByCategoryAsync(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return asyncClient.search(camerasRequest(filters, timeRangeDTO), this::toCountByCategory);
+    }
+
+    @Override
+    public CompletableFuture<EventTimeRange> findEventTimeRangeAsync(String eventStart, String eventEnd, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return asyncClient.msearch(eventTimeRangeRequest(eventStart, eventEnd, filters, timeRangeDTO), this::toEventTimeRange);
+    }
+
+    public MultiSearchPart<GenericCounter> counterPart(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return MultiSearchPart.of(counterRequest(filters, timeRangeDTO), this::toCounter);
+    }
+
+    public MultiSearchPart<List<String>> camerasPart(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return MultiSearchPart.of(camerasRequest(filters, timeRangeDTO), this::toCameras);
+    }
+
+    /**
+     * The count is a size-0 search here, since a count request cannot be sent in an msearch.
+     */
+    public MultiSearchPart<AverageCounter> averagesPart(List<FilterDTO> filters) {
+        BoolQueryBuilder searchQuery = averagesQuery(filters);
+        List<SearchRequest> requests = Arrays.asList(averagesTotalRequest(searchQuery),
+                boundaryRequest(searchQuery, SortOrder.ASC), boundaryRequest(searchQuery, SortOrder.DESC));
+        return MultiSearchPart.of(requests, responses -> toAverages(responses.get(0).getHits().getTotalHits().value,
+                boundaryTime(responses.get(1)), boundaryTime(responses.get(2))));
+    }
+
+    public MultiSearchPart<HashMap<String, Long>> countByCategoryPart(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return MultiSearchPart.of(camerasRequest(filters, timeRangeDTO), this::toCountByCategory);
+    }
+
+    public MultiSearchPart<EventTimeRange> eventTimeRangePart(String eventStart, String eventEnd, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        return MultiSearchPart.of(eventTimeRangeRequest(eventStart, eventEnd, filters, timeRangeDTO).requests(),
+                responses -> toEventTimeRange(responses.get(0), responses.get(1)));
+    }
+
+    private SearchRequest counterRequest(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        TermsAggregationBuilder aggregationBuilderAggName = AggregationBuilders.terms("agg_names").field(indexResolver.keywordField("Agg.Name")).size(100000000).minDocCount(1);
         CardinalityAggregationBuilder aggregationBuildEvent = AggregationBuilders.cardinality("events").field("id");
-        TermsAggregationBuilder aggregationBuilderMotionDetector = AggregationBuilders.terms("motion_detectors").field("Event.Params.DeviceName.keyword").size(100000000).minDocCount(1);
-        TermsAggregationBuilder aggregationBuilderCamera = AggregationBuilders.terms("cameras").field("Event.Params.DeviceName.keyword").size(100000000).minDocCount(1);
+        TermsAggregationBuilder aggregationBuilderMotionDetector = AggregationBuilders.terms("motion_detectors").field(indexResolver.keywordField("Event.Params.DeviceName")).size(100000000).minDocCount(1);
+        TermsAggregationBuilder aggregationBuilderCamera = AggregationBuilders.terms("cameras").field(indexResolver.keywordField("Event.Params.DeviceName")).size(100000000).minDocCount(1);
 
         SearchRequest searchRequest = new SearchRequest();
-        searchRequest.indices("event_detail");
+        searchRequest.indices(indexResolver.indicesFor(timeRangeDTO));
+        searchRequest.indicesOptions(EventIndexResolver.SEARCH_OPTIONS);
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
         BoolQueryBuilder searchQuery = QueryBuilders.boolQuery();
 
         searchQuery.filter(QueryBuilders.rangeQuery("Timestamp").gte(timeRangeDTO.getFrom()).lte(timeRangeDTO.getTo()));
-        prepareFilters(searchQuery, filters);
+        queryCompiler.applyFilters(searchQuery, filters);
 
         searchSourceBuilder.query(searchQuery).aggregation(aggregationBuilderAggName)
                 .aggregation(aggregationBuildEvent)
@@ -72,7 +175,13 @@ public class StatServiceImpl implements StatServiceInterface {
                 .aggregation(aggregationBuilderCamera);
 
         searchRequest.source(searchSourceBuilder);
-        SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
+        return searchRequest;
+    }
+
+    private GenericCounter toCounter(SearchResponse searchResponse) {
+        if (searchResponse.getAggregations() == null) {
+            return new GenericCounter();
+        }
         Terms aggName = searchResponse.getAggregations().get("agg_names");
         Terms motion_detector = searchResponse.getAggregations().get("motion_detectors");
         Terms camera = searchResponse.getAggregations().get("cameras");
@@ -87,25 +196,33 @@ public class StatServiceImpl implements StatServiceInterface {
         return genericCounter;
     }
 
-    @Override
-    public List<String> findCameras(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
-        TermsAggregationBuilder aggregationBuilderCamera = AggregationBuilders.terms("cameras").field("Event.Params.DeviceName.keyword").size(100000000).minDocCount(1);
+    /**
+     * Also serves the count by category, which aggregates the same buckets.
+     */
+    private SearchRequest camerasRequest(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
+        TermsAggregationBuilder aggregationBuilderCamera = AggregationBuilders.terms("cameras").field(indexResolver.keywordField("Event.Params.DeviceName")).size(100000000).minDocCount(1);
 
         SearchRequest searchRequest = new SearchRequest();
-        searchRequest.indices("event_detail");
+        searchRequest.indices(indexResolver.indicesFor(timeRangeDTO));
+        searchRequest.indicesOptions(EventIndexResolver.SEARCH_OPTIONS);
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
         BoolQueryBuilder searchQuery = QueryBuilders.boolQuery();
 
         searchQuery.filter(QueryBuilders.rangeQuery("Timestamp").gte(timeRangeDTO.getFrom()).lte(timeRangeDTO.getTo()));
-        prepareFilters(searchQuery, filters);
+        queryCompiler.applyFilters(searchQuery, filters);
 
         searchSourceBuilder.query(searchQuery).aggregation(aggregationBuilderCamera);
 
         searchRequest.source(searchSourceBuilder);
-        SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
-        Terms camera = searchResponse.getAggregations().get("cameras");
+        return searchRequest;
+    }
 
+    private List<String> toCameras(SearchResponse searchResponse) {
         List<String> cameraList = new ArrayList<>();
+        if (searchResponse.getAggregations() == null) {
+            return cameraList;
+        }
+        Terms camera = searchResponse.getAggregations().get("cameras");
 
         for (final Terms.Bucket entry : camera.getBuckets()) {
             cameraList.add(entry.getKeyAsString());
@@ -113,43 +230,63 @@ public class StatServiceImpl implements StatServiceInterface {
         return cameraList;
     }
 
-    @Override
-    public AverageCounter findAverages(List<FilterDTO> filters) throws IOException {
-        CountRequest countRequest = new CountRequest();
-        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+    private HashMap<String, Long> toCountByCategory(SearchResponse searchResponse) {
+        HashMap<String, Long> cameraListCount = new HashMap<>();
+        if (searchResponse.getAggregations() == null) {
+            return cameraListCount;
+        }
+        Terms camera = searchResponse.getAggregations().get("cameras");
+
+        for (final Terms.Bucket entry : camera.getBuckets()) {
+            cameraListCount.put(entry.getKeyAsString(), entry.getDocCount());
+        }
+
+        return cameraListCount;
+    }
+
+    private BoolQueryBuilder averagesQuery(List<FilterDTO> filters) {
         BoolQueryBuilder searchQuery = QueryBuilders.boolQuery();
-        prepareFilters(searchQuery, filters);
-        searchSourceBuilder.query(searchQuery).trackTotalHits(true);
+        queryCompiler.applyFilters(searchQuery, filters);
+        return searchQuery;
+    }
+
+    private CountRequest averagesCountRequest(BoolQueryBuilder searchQuery) {
+        CountRequest countRequest = new CountRequest(EventIndexResolver.ALIAS);
         countRequest.query(searchQuery);
-        CountResponse countResponse = client.count(countRequest, RequestOptions.DEFAULT);
+        return countRequest;
+    }
+
+    private SearchRequest averagesTotalRequest(BoolQueryBuilder searchQuery) {
+        SearchRequest searchRequest = new SearchRequest(EventIndexResolver.ALIAS);
+        searchRequest.source(new SearchSourceBuilder().query(searchQuery).size(0).trackTotalHits(true));
+        return searchRequest;
+    }
 
+    /**
+     * The first or the latest matching event, whichever {@code order} puts on top.
+     */
+    private SearchRequest boundaryRequest(BoolQueryBuilder searchQuery, SortOrder order) {
         SearchRequest searchRequest = new SearchRequest();
-        searchRequest.indices("event_detail");
+        searchRequest.indices(EventIndexResolver.ALIAS);
 
-        SearchSourceBuilder searchSourceBuilderFirst = new SearchSourceBuilder();
-        searchSourceBuilderFirst.query(searchQuery).size(1).sort(new FieldSortBuilder("Timestamp").order(SortOrder.ASC)).size(1).fetchSource(new String[]{"Timestamp"}, null);
-        searchRequest.source(searchSourceBuilderFirst);
-        SearchResponse searchResponseFirst = client.search(searchRequest, RequestOptions.DEFAULT);
-        SearchHit[] searchHitFirst = searchResponseFirst.getHits().getHits();
-        DateTime firstEventTime = new DateTime();
-        for (SearchHit hit : searchHitFirst) {
-            firstEventTime = objectMapper.convertValue(hit.getSourceAsMap(), EventDetail.class).getTimestamp();
-        }
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+        searchSourceBuilder.query(searchQuery).size(1).sort(new FieldSortBuilder("Timestamp").order(order)).size(1).trackTotalHits(false).fetchSource(new String[]{"Timestamp"}, null);
+        searchRequest.source(searchSourceBuilder);
+        return searchRequest;
+    }
 
-        SearchSourceBuilder searchSourceBuilderLast = new SearchSourceBuilder();
-        searchSourceBuilderLast.query(searchQuery).size(1).sort(new FieldSortBuilder("Timestamp").order(SortOrder.DESC)).size(1).fetchSource(new String[]{"Timestamp"}, null);
-        searchRequest.source(searchSourceBuilderLast);
-        SearchResponse searchResponseLast = client.search(searchRequest, RequestOptions.DEFAULT);
-        SearchHit[] searchHitLast = searchResponseLast.getHits().getHits();
-        DateTime lastEventTime = new DateTime();
-        for (SearchHit hit : searchHitLast) {
-            lastEventTime = objectMapper.convertValue(hit.getSourceAsMap(), EventDetail.class).getTimestamp();
+    private DateTime boundaryTime(SearchResponse searchResponse) {
+        DateTime eventTime = new DateTime();
+        for (SearchHit hit : searchResponse.getHits().getHits()) {
+            eventTime = objectMapper.convertValue(hit.getSourceAsMap(), EventDetail.class).getTimestamp();
         }
+        return eventTime;
+    }
 
+    private AverageCounter toAverages(long total_hits, DateTime firstEventTime, DateTime lastEventTime) {
         int weeks = Weeks.weeksBetween(firstEventTime.withTimeAtStartOfDay(), lastEventTime).getWeeks() + 1;
         int days = Days.daysBetween(firstEventTime, lastEventTime).getDays() + 1;
         int hours = Hours.hoursBetween(firstEventTime, lastEventTime).getHours() + 1;
-        long total_hits =  countResponse.getCount();
 
         AverageCounter averageCounter = new AverageCounter();
         averageCounter.setAvgForWeek((float) total_hits/weeks);
@@ -159,67 +296,43 @@ public class StatServiceImpl implements StatServiceInterface {
         return averageCounter;
     }
 
-    @Override
-    public HashMap<String, Long> findCountByCategory(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
-        TermsAggregationBuilder aggregationBuilderCamera = AggregationBuilders.terms("cameras").field("Event.Params.DeviceName.keyword").size(100000000).minDocCount(1);
-
-        SearchRequest searchRequest = new SearchRequest();
-        searchRequest.indices("event_detail");
-        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-        BoolQueryBuilder searchQuery = QueryBuilders.boolQuery();
-
-        searchQuery.filter(QueryBuilders.rangeQuery("Timestamp").gte(timeRangeDTO.getFrom()).lte(timeRangeDTO.getTo()));
-        prepareFilters(searchQuery, filters);
-
-        searchSourceBuilder.query(searchQuery).aggregation(aggregationBuilderCamera);
-
-        searchRequest.source(searchSourceBuilder);
-        SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
-        Terms camera = searchResponse.getAggregations().get("cameras");
-
-        HashMap<String, Long> cameraListCount = new HashMap<>();
-
-        for (final Terms.Bucket entry : camera.getBuckets()) {
-            cameraListCount.put(entry.getKeyAsString(), entry.getDocCount());
-        }
-
-        return cameraListCount;
-    }
-
-    @Override
-    public EventTimeRange findEventTimeRange(String eventStart, String eventEnd, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException {
+    private MultiSearchRequest eventTimeRangeRequest(String eventStart, String eventEnd, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) {
         MultiSearchRequest request = new MultiSearchRequest();
-        SearchRequest firstSearchRequest = new SearchRequest();
+        String[] indices = indexResolver.indicesFor(timeRangeDTO);
+        SearchRequest firstSearchRequest = new SearchRequest(indices);
+        firstSearchRequest.indicesOptions(EventIndexResolver.SEARCH_OPTIONS);
         BoolQueryBuilder searchQueryFirst = QueryBuilders.boolQuery();
         searchQueryFirst.filter(QueryBuilders.rangeQuery("Timestamp").gte(timeRangeDTO.getFrom()).lte(timeRangeDTO.getTo()));
         searchQueryFirst.must(QueryBuilders.matchQuery("Event.Params.Name", eventStart).operator(Operator.AND));
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-        prepareFilters(searchQueryFirst, filters);
+        queryCompiler.applyFilters(searchQueryFirst, filters);
         searchSourceBuilder.query(searchQueryFirst);
         searchSourceBuilder.sort(new FieldSortBuilder("Timestamp").order(SortOrder.DESC));
         searchSourceBuilder.size(1);
+        searchSourceBuilder.trackTotalHits(false);
         firstSearchRequest.source(searchSourceBuilder);
         request.add(firstSearchRequest);
-        SearchRequest secondSearchRequest = new SearchRequest();
+        SearchRequest secondSearchRequest = new SearchRequest(indices);
+        secondSearchRequest.indicesOptions(EventIndexResolver.SEARCH_OPTIONS);
         BoolQueryBuilder searchQuerySecond = QueryBuilders.boolQuery();
         searchQuerySecond.filter(QueryBuilders.rangeQuery("Timestamp").gte(timeRangeDTO.getFrom()).lte(timeRangeDTO.getTo()));
         searchQuerySecond.must(QueryBuilders.matchQuery("Event.Params.Name", eventEnd).operator(Operator.AND));
-        prepareFilters(searchQuerySecond, filters);
+        queryCompiler.applyFilters(searchQuerySecond, filters);
         searchSourceBuilder = new SearchSourceBuilder();
         searchSourceBuilder.query(searchQuerySecond);
         searchSourceBuilder.sort(new FieldSortBuilder("Timestamp").order(SortOrder.DESC));
         searchSourceBuilder.size(1);
+        searchSourceBuilder.trackTotalHits(false);
         secondSearchRequest.source(searchSourceBuilder);
         request.add(secondSearchRequest);
+        return request;
+    }
 
-        MultiSearchResponse multiSearchResponse = client.msearch(request, RequestOptions.DEFAULT);
-
-        MultiSearchResponse.Item firstResponse = multiSearchResponse.getResponses()[0];
-        SearchResponse searchResponseFirst = firstResponse.getResponse();
-        MultiSearchResponse.Item secondResponse = multiSearchResponse.getResponses()[1];
-        SearchResponse searchResponseSecond = secondResponse.getResponse();
-
+    private EventTimeRange toEventTimeRange(MultiSearchResponse multiSearchResponse) {
+        return toEventTimeRange(multiSearchResponse.getResponses()[0].getResponse(), multiSearchResponse.getResponses()[1].getResponse());
+    }
 
+    private EventTimeRange toEventTimeRange(SearchResponse searchResponseFirst, SearchResponse searchResponseSecond) {
         SearchHit[] searchHitSecond = searchResponseSecond.getHits().getHits();
         EventDetail eventDetailSecond = new EventDetail();
         for (SearchHit hit : searchHitSecond) {
@@ -246,15 +359,4 @@ public class StatServiceImpl implements StatServiceInterface {
             return null;
         }
     }
-
-    private void prepareFilters(BoolQueryBuilder searchQuery, List<FilterDTO> filters) {
-        if (filters == null) {
-            return;
-        }
-        filters.stream().collect(Collectors.groupingBy(FilterDTO::getKey)).forEach((key, values) -> {
-            BoolQueryBuilder bool = QueryBuilders.boolQuery();
-            values.forEach(value -> bool.should(QueryBuilders.matchQuery(key, value.getValues())));
-            searchQuery.must(bool);
-        });
-    }
 }
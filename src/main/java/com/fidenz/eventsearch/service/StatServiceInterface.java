@@ -8,6 +8,7 @@ import com.fidenz.eventsearch.entity.GenericCounter;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface StatServiceInterface {
     GenericCounter findCounter(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException;
@@ -15,4 +16,9 @@ public interface StatServiceInterface {
     AverageCounter findAverages(List<FilterDTO> filters) throws IOException;
     HashMap<String, Long> findCountByCategory(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException;
     EventTimeRange findEventTimeRange(String event_start, String event_end, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO) throws IOException;
+    CompletableFuture<GenericCounter> findCounterAsync(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO);
+    CompletableFuture<List<String>> findCamerasAsync(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO);
+    CompletableFuture<AverageCounter> findAveragesAsync(List<FilterDTO> filters);
+    CompletableFuture<HashMap<String, Long>> findCountByCategoryAsync(List<FilterDTO> filters, TimeRangeDTO timeRangeDTO);
+    CompletableFuture<EventTimeRange> findEventTimeRangeAsync(String event_start, String event_end, List<FilterDTO> filters, TimeRangeDTO timeRangeDTO);
 }
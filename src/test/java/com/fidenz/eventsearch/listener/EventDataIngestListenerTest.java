@@ -0,0 +1,92 @@
+package com.fidenz.eventsearch.listener;
+
+import com.fidenz.eventsearch.service.BulkTuner;
+import com.fidenz.eventsearch.service.EventLookup;
+import com.fidenz.eventsearch.service.FingerprintIndex;
+import com.fidenz.eventsearch.service.IngestMetrics;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.mapper.MapperParsingException;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class EventDataIngestListenerTest {
+
+    private final EventDataIngestListener listener = new EventDataIngestListener(mock(BulkTuner.class),
+            new IngestMetrics(), mock(FingerprintIndex.class), mock(EventLookup.class));
+
+    @Test
+    void successfulBulkHasNoFailures() {
+        BulkRequest request = request(2);
+
+        listener.afterBulk(1, request, new BulkResponse(new BulkItemResponse[]{written(0), written(1)}, 5));
+
+        assertFalse(listener.hasFailures());
+        assertFalse(listener.hasRetryableFailures());
+        assertEquals(2, listener.getDocuments());
+    }
+
+    @Test
+    void documentRejectedForItsContentIsNotRetryable() {
+        BulkRequest request = request(2);
+
+        listener.afterBulk(1, request, new BulkResponse(new BulkItemResponse[]{written(0),
+                failed(1, new MapperParsingException("failed to parse field [Timestamp]"))}, 5));
+
+        assertTrue(listener.hasFailures());
+        assertFalse(listener.hasRetryableFailures());
+        assertEquals(1, listener.getDocuments());
+        assertEquals(1, listener.getFailedDocuments());
+    }
+
+    @Test
+    void documentRejectedUnderLoadIsRetryable() {
+        BulkRequest request = request(2);
+
+        listener.afterBulk(1, request, new BulkResponse(new BulkItemResponse[]{written(0),
+                failed(1, new EsRejectedExecutionException("rejected execution of bulk"))}, 5));
+
+        assertTrue(listener.hasRetryableFailures());
+    }
+
+    @Test
+    void failedRequestIsRetryable() {
+        BulkRequest request = request(2);
+
+        listener.afterBulk(1, request, new IOException("Connection refused"));
+
+        assertTrue(listener.hasRetryableFailures());
+        assertEquals(2, listener.getFailedDocuments());
+    }
+
+    private static BulkRequest request(int documents) {
+        BulkRequest request = new BulkRequest();
+        for (int i = 0; i < documents; i++) {
+            request.add(new IndexRequest("event_detail").id(Integer.toString(i)).source("{}", XContentType.JSON));
+        }
+        return request;
+    }
+
+    private static BulkItemResponse written(int item) {
+        return new BulkItemResponse(item, DocWriteRequest.OpType.INDEX,
+                new IndexResponse(new ShardId("event_detail", "_na_", 0), "_doc", Integer.toString(item), 1, 1, 1, true));
+    }
+
+    private static BulkItemResponse failed(int item, Exception cause) {
+        return new BulkItemResponse(item, DocWriteRequest.OpType.INDEX,
+                new BulkItemResponse.Failure("event_detail", "_doc", Integer.toString(item), cause));
+    }
+}
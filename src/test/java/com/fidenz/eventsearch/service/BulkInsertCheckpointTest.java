@@ -0,0 +1,211 @@
+package com.fidenz.eventsearch.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.joda.JodaModule;
+import com.fidenz.eventsearch.config.EventIndexTemplate;
+import com.fidenz.eventsearch.dto.IngestStatusDTO;
+import com.fidenz.eventsearch.entity.FileCheckpoint;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.index.mapper.MapperParsingException;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Drives a collector run against a stubbed bulk endpoint and checks when the file checkpoints move.
+ */
+class BulkInsertCheckpointTest {
+
+    private static final String EVENT = "{\"Timestamp\":\"2021-01-01T00:00:00.000Z\",\"MessageType\":\"Event\"}";
+
+    @TempDir
+    Path collector;
+
+    private final RestHighLevelClient client = mock(RestHighLevelClient.class);
+    private final CheckpointServiceInterface checkpointService = mock(CheckpointServiceInterface.class);
+    private final ExecutorService ingestExecutor = Executors.newFixedThreadPool(2);
+    private final BulkInsert bulkInsert = new BulkInsert();
+
+    /**
+     * Answers each bulk request; returning {@code null} fails the request as a whole.
+     */
+    private Function<BulkRequest, BulkResponse> cluster;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JodaModule());
+
+        BulkTuner bulkTuner = new BulkTuner();
+        ReflectionTestUtils.setField(bulkTuner, "bulkActions", 1000);
+        ReflectionTestUtils.setField(bulkTuner, "bulkSize", 5L * 1024 * 1024);
+        ReflectionTestUtils.setField(bulkTuner, "concurrentRequests", 1);
+        ReflectionTestUtils.setField(bulkTuner, "backoffDelay", 10L);
+        ReflectionTestUtils.setField(bulkTuner, "backoffRetries", 0);
+        bulkTuner.init();
+
+        BulkLoadMode bulkLoadMode = mock(BulkLoadMode.class);
+        when(bulkLoadMode.open(anyBoolean())).thenReturn(new BulkLoad(bulkLoadMode, -1));
+        EventIndexResolver indexResolver = mock(EventIndexResolver.class);
+        when(indexResolver.indexFor(any())).thenReturn(EventIndexResolver.ALIAS);
+        when(checkpointService.load()).thenReturn(new HashMap<>());
+
+        doAnswer(invocation -> {
+            BulkRequest request = invocation.getArgument(0);
+            ActionListener<BulkResponse> listener = invocation.getArgument(2);
+            BulkResponse response = cluster.apply(request);
+            if (response == null) {
+                listener.onFailure(new IOException("Connection refused"));
+            } else {
+                listener.onResponse(response);
+            }
+            return null;
+        }).when(client).bulkAsync(any(), any(), any());
+
+        ReflectionTestUtils.setField(bulkInsert, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(bulkInsert, "client", client);
+        ReflectionTestUtils.setField(bulkInsert, "checkpointService", checkpointService);
+        ReflectionTestUtils.setField(bulkInsert, "ingestExecutor", ingestExecutor);
+        ReflectionTestUtils.setField(bulkInsert, "bulkTuner", bulkTuner);
+        ReflectionTestUtils.setField(bulkInsert, "ingestMetrics", new IngestMetrics());
+        ReflectionTestUtils.setField(bulkInsert, "fingerprintIndex", mock(FingerprintIndex.class));
+        ReflectionTestUtils.setField(bulkInsert, "indexResolver", indexResolver);
+        ReflectionTestUtils.setField(bulkInsert, "eventIndexTemplate", mock(EventIndexTemplate.class));
+        ReflectionTestUtils.setField(bulkInsert, "bulkLoadMode", bulkLoadMode);
+        ReflectionTestUtils.setField(bulkInsert, "eventPublisher", mock(ApplicationEventPublisher.class));
+        ReflectionTestUtils.setField(bulkInsert, "eventLookup", mock(EventLookup.class));
+        ReflectionTestUtils.setField(bulkInsert, "autocompleteIndex", mock(AutocompleteIndex.class));
+        ReflectionTestUtils.setField(bulkInsert, "chunkSize", 1024L * 1024);
+        ReflectionTestUtils.setField(bulkInsert, "collectorPath", collector.toString());
+        bulkInsert.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ingestExecutor.shutdownNow();
+    }
+
+    @Test
+    void checkpointAdvancesWhenEveryDocumentIsWritten() throws Exception {
+        Path file = collectorFile(EVENT, EVENT);
+        cluster = request -> respond(request, item -> null);
+
+        IngestStatusDTO status = bulkInsert.ingestDataCall(new IngestProgress(), null, false);
+
+        assertTrue(status.isStatus());
+        assertEquals(2, status.getDocuments());
+        assertEquals(Files.size(file), savedOffset());
+    }
+
+    @Test
+    void checkpointMovesPastADocumentRejectedForItsContent() throws Exception {
+        Path file = collectorFile(EVENT, EVENT, EVENT);
+        cluster = request -> respond(request, item -> item == 1 ? new MapperParsingException("failed to parse") : null);
+
+        IngestStatusDTO status = bulkInsert.ingestDataCall(new IngestProgress(), null, false);
+
+        assertTrue(status.isStatus());
+        assertEquals(2, status.getDocuments());
+        assertEquals(1, status.getFailedDocuments());
+        assertEquals(Files.size(file), savedOffset());
+    }
+
+    @Test
+    void checkpointMovesPastAMalformedLine() throws Exception {
+        Path file = collectorFile(EVENT, "{\"Timestamp\":", EVENT);
+        cluster = request -> respond(request, item -> null);
+
+        IngestStatusDTO status = bulkInsert.ingestDataCall(new IngestProgress(), null, false);
+
+        assertTrue(status.isStatus());
+        assertEquals(2, status.getDocuments());
+        assertEquals(1, status.getFailedDocuments());
+        assertEquals(Files.size(file), savedOffset());
+    }
+
+    @Test
+    void checkpointHoldsWhenADocumentIsRejectedUnderLoad() throws Exception {
+        collectorFile(EVENT, EVENT);
+        cluster = request -> respond(request, item -> item == 0 ? new EsRejectedExecutionException("rejected") : null);
+
+        IngestStatusDTO status = bulkInsert.ingestDataCall(new IngestProgress(), null, false);
+
+        assertFalse(status.isStatus());
+        verify(checkpointService, never()).save(any());
+    }
+
+    @Test
+    void checkpointHoldsWhenTheRequestFails() throws Exception {
+        collectorFile(EVENT, EVENT);
+        cluster = request -> null;
+
+        IngestStatusDTO status = bulkInsert.ingestDataCall(new IngestProgress(), null, false);
+
+        assertFalse(status.isStatus());
+        verify(checkpointService, never()).save(any());
+    }
+
+    private Path collectorFile(String... lines) throws IOException {
+        return Files.write(collector.resolve("collector.log"),
+                (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @SuppressWarnings("unchecked")
+    private long savedOffset() throws IOException {
+        ArgumentCaptor<Map<String, FileCheckpoint>> saved = ArgumentCaptor.forClass(Map.class);
+        verify(checkpointService).save(saved.capture());
+        assertEquals(1, saved.getValue().size());
+        return saved.getValue().values().iterator().next().getOffset();
+    }
+
+    /**
+     * @param failures the failure of each item by its position in the request, {@code null} for
+     *                 one that is written
+     */
+    private static BulkResponse respond(BulkRequest request, Function<Integer, Exception> failures) {
+        BulkItemResponse[] items = new BulkItemResponse[request.numberOfActions()];
+        for (int i = 0; i < items.length; i++) {
+            String id = request.requests().get(i).id();
+            Exception failure = failures.apply(i);
+            items[i] = failure == null
+                    ? new BulkItemResponse(i, DocWriteRequest.OpType.INDEX,
+                            new IndexResponse(new ShardId(EventIndexResolver.ALIAS, "_na_", 0), "_doc", id, 1, 1, 1, true))
+                    : new BulkItemResponse(i, DocWriteRequest.OpType.INDEX,
+                            new BulkItemResponse.Failure(EventIndexResolver.ALIAS, "_doc", id, failure));
+        }
+        return new BulkResponse(items, 1);
+    }
+}
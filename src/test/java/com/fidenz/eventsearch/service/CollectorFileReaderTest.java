@@ -0,0 +1,107 @@
+package com.fidenz.eventsearch.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CollectorFileReaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void splitMovesBoundariesToTheNextLineStart() throws IOException {
+        Path file = write("aaaa\nbbbb\ncccc\n");
+
+        assertEquals(Arrays.asList(0L, 5L, 10L, 15L), CollectorFileReader.split(file, 0, 15, 2));
+    }
+
+    @Test
+    void splitKeepsABoundaryThatIsAlreadyALineStart() throws IOException {
+        Path file = write("ab\ncd\nef\n");
+
+        assertEquals(Arrays.asList(0L, 3L, 6L, 9L), CollectorFileReader.split(file, 0, 9, 3));
+    }
+
+    @Test
+    void splitStartsFromTheCheckpoint() throws IOException {
+        Path file = write("aaaa\nbbbb\ncccc\n");
+
+        assertEquals(Arrays.asList(5L, 10L, 15L), CollectorFileReader.split(file, 5, 15, 1));
+    }
+
+    @Test
+    void splitRangesTogetherReadEveryLineOnce() throws IOException {
+        StringBuilder content = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String line = "{\"line\":" + i + ",\"pad\":\"" + String.join("", Collections.nCopies(i % 17, "x")) + "\"}";
+            expected.add(line);
+            content.append(line).append('\n');
+        }
+        Path file = write(content.toString());
+        long size = Files.size(file);
+
+        List<Long> boundaries = CollectorFileReader.split(file, 0, size, 100);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < boundaries.size() - 1; i++) {
+            long end = new CollectorFileReader(file, boundaries.get(i), boundaries.get(i + 1)).readLines(collect(lines));
+            assertEquals(boundaries.get(i + 1), end);
+        }
+
+        assertEquals(expected, lines);
+    }
+
+    @Test
+    void lastLineWithoutNewlineIsLeftForTheNextRead() throws IOException {
+        Path file = write("first\nsecond\nthird");
+        List<String> lines = new ArrayList<>();
+
+        long checkpoint = new CollectorFileReader(file, 0, Files.size(file)).readLines(collect(lines));
+
+        assertEquals(Arrays.asList("first", "second"), lines);
+        assertEquals(13, checkpoint);
+    }
+
+    /**
+     * The reader maps at most 64 MB at a time; a line running over the end of one mapping must be
+     * joined with its rest from the next.
+     */
+    @Test
+    void lineAcrossAMappedWindowIsReadWhole() throws IOException {
+        int window = 64 * 1024 * 1024;
+        Path file = directory.resolve("large.log");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            byte[] filler = new byte[window - 3];
+            Arrays.fill(filler, (byte) 'x');
+            out.write(filler);
+            out.write("\nstraddling\nlast\n".getBytes(StandardCharsets.UTF_8));
+        }
+        List<String> lines = new ArrayList<>();
+
+        long checkpoint = new CollectorFileReader(file, 0, Files.size(file)).readLines((offset, buffer, length) ->
+                lines.add(length == window - 3 ? "filler" : new String(buffer, 0, length, StandardCharsets.UTF_8)));
+
+        assertEquals(Arrays.asList("filler", "straddling", "last"), lines);
+        assertEquals(Files.size(file), checkpoint);
+    }
+
+    private Path write(String content) throws IOException {
+        return Files.write(directory.resolve("collector.log"), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static CollectorFileReader.LineHandler collect(List<String> lines) {
+        return (offset, buffer, length) -> lines.add(new String(buffer, 0, length, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,46 @@
+package com.fidenz.eventsearch.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocumentIdsTest {
+
+    /**
+     * Ids already stored in Elasticsearch were derived this way; any change to the hash would
+     * duplicate every event on the next ingest.
+     */
+    @Test
+    void idsAreStableAcrossReleases() {
+        assertEquals(826785685019178381L, DocumentIds.forLine("inode-1234", 0));
+        assertEquals(4536052792029287723L, DocumentIds.forLine("inode-1234", 4096));
+        byte[] record = "{\"MessageType\":\"Event\"}".getBytes(StandardCharsets.UTF_8);
+        assertEquals(6399666930569593801L, DocumentIds.forContent(record, 0, record.length));
+    }
+
+    @Test
+    void lineIdsDependOnFileAndOffset() {
+        assertEquals(DocumentIds.forLine("inode-1234", 42), DocumentIds.forLine("inode-1234", 42));
+        assertNotEquals(DocumentIds.forLine("inode-1234", 42), DocumentIds.forLine("inode-1234", 43));
+        assertNotEquals(DocumentIds.forLine("inode-1234", 42), DocumentIds.forLine("inode-1235", 42));
+    }
+
+    @Test
+    void contentIdsIgnoreWhereTheRecordSitsInTheBuffer() {
+        byte[] record = "{\"id\":null}".getBytes(StandardCharsets.UTF_8);
+        byte[] padded = " {\"id\":null} ".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(DocumentIds.forContent(record, 0, record.length), DocumentIds.forContent(padded, 1, record.length));
+    }
+
+    @Test
+    void idsAreNeverNegative() {
+        for (long offset = 0; offset < 10_000; offset++) {
+            assertTrue(DocumentIds.forLine("inode-1234", offset) >= 0);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.fidenz.eventsearch.service;
+
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventCursorTest {
+
+    @Test
+    void cursorOfAFullPageResumesAfterItsLastHit() {
+        SearchHit[] hits = {hit(1609459300000L, 7L), hit(1609459200000L, 42L)};
+
+        String cursor = EventCursor.next(hits, 2);
+        SearchSourceBuilder source = new SearchSourceBuilder();
+        EventCursor.apply(source, cursor);
+
+        assertNotNull(cursor);
+        assertArrayEquals(new Object[]{1609459200000L, 42L}, source.searchAfter());
+        assertEquals(2, source.sorts().size());
+    }
+
+    @Test
+    void cursorSurvivesTimestampsBeforeTheEpoch() {
+        SearchSourceBuilder source = new SearchSourceBuilder();
+        EventCursor.apply(source, EventCursor.next(new SearchHit[]{hit(-86400000L, 3L)}, 1));
+
+        assertArrayEquals(new Object[]{-86400000L, 3L}, source.searchAfter());
+    }
+
+    @Test
+    void cursorIsUrlSafe() {
+        String cursor = EventCursor.next(new SearchHit[]{hit(Long.MAX_VALUE, Long.MAX_VALUE)}, 1);
+
+        assertTrue(cursor.matches("[A-Za-z0-9_-]+"), cursor);
+    }
+
+    @Test
+    void firstPageHasNoSearchAfter() {
+        SearchSourceBuilder source = new SearchSourceBuilder();
+        EventCursor.apply(source, null);
+        assertNull(source.searchAfter());
+
+        source = new SearchSourceBuilder();
+        EventCursor.apply(source, "");
+        assertNull(source.searchAfter());
+    }
+
+    @Test
+    void lastPageHasNoNextCursor() {
+        assertNull(EventCursor.next(new SearchHit[]{hit(1609459200000L, 42L)}, 2));
+        assertNull(EventCursor.next(new SearchHit[0], 2));
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertInvalid("not a cursor!");
+        assertInvalid(encode("1609459200000"));
+        assertInvalid(encode("yesterday:42"));
+        assertInvalid(encode("1609459200000:"));
+    }
+
+    private static void assertInvalid(String cursor) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> EventCursor.apply(new SearchSourceBuilder(), cursor));
+        assertTrue(e.getMessage().startsWith("Invalid cursor"), e.getMessage());
+    }
+
+    private static String encode(String token) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static SearchHit hit(long timestamp, long id) {
+        SearchHit hit = new SearchHit((int) id);
+        hit.sortValues(new Object[]{timestamp, id}, new DocValueFormat[]{DocValueFormat.RAW, DocValueFormat.RAW});
+        return hit;
+    }
+}
@@ -0,0 +1,188 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.dto.IngestJobDTO;
+import com.fidenz.eventsearch.dto.IngestStatusDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IngestJobServiceImplTest {
+
+    private final BulkInsertInterface bulkService = mock(BulkInsertInterface.class);
+    private final IngestJobServiceImpl jobService = new IngestJobServiceImpl();
+    private final CountDownLatch firstPassStarted = new CountDownLatch(1);
+    private final CountDownLatch firstPassMayEnd = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(jobService, "bulkService", bulkService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        firstPassMayEnd.countDown();
+        jobService.shutdown();
+    }
+
+    @Test
+    void jobRunsOnePassAndSucceeds() throws Exception {
+        when(bulkService.ingestDataCall(any(), any(), anyBoolean())).thenReturn(status(true));
+
+        IngestJobDTO job = awaitFinished(jobService.trigger());
+
+        assertEquals("SUCCEEDED", job.getState());
+        assertEquals(1, job.getRuns());
+    }
+
+    @Test
+    void triggersWhileRunningJoinTheJobAndMergeIntoOneRerun() throws Exception {
+        firstPassBlocks(status(true));
+        Path first = Paths.get("a.log");
+        Path second = Paths.get("b.log");
+
+        IngestJobDTO job = jobService.trigger(Collections.singleton(first), false);
+        assertTrue(firstPassStarted.await(5, TimeUnit.SECONDS));
+        assertEquals(job.getId(), jobService.trigger(Collections.singleton(second), false).getId());
+        assertEquals(job.getId(), jobService.trigger(Collections.singleton(first), true).getId());
+        firstPassMayEnd.countDown();
+
+        job = awaitFinished(job);
+        assertEquals("SUCCEEDED", job.getState());
+        assertEquals(2, job.getRuns());
+        List<Set<Path>> files = passFiles(2);
+        assertEquals(new HashSet<>(Arrays.asList(first, second)), files.get(1));
+        assertEquals(Arrays.asList(false, true), passBulkLoad(2));
+    }
+
+    @Test
+    void fullScanTriggerWinsOverFileTriggers() throws Exception {
+        firstPassBlocks(status(true));
+
+        IngestJobDTO job = jobService.trigger(Collections.singleton(Paths.get("a.log")), false);
+        assertTrue(firstPassStarted.await(5, TimeUnit.SECONDS));
+        jobService.trigger(Collections.singleton(Paths.get("b.log")));
+        jobService.trigger();
+        firstPassMayEnd.countDown();
+
+        awaitFinished(job);
+        assertNull(passFiles(2).get(1));
+    }
+
+    @Test
+    void failedPassStillRunsTheRequestedRerun() throws Exception {
+        firstPassBlocks(status(false));
+        Path requested = Paths.get("new.log");
+
+        IngestJobDTO job = jobService.trigger();
+        assertTrue(firstPassStarted.await(5, TimeUnit.SECONDS));
+        jobService.trigger(Collections.singleton(requested), true);
+        firstPassMayEnd.countDown();
+
+        job = awaitFinished(job);
+        assertEquals("FAILED", job.getState());
+        assertEquals(2, job.getRuns());
+        assertEquals(Collections.singleton(requested), passFiles(2).get(1));
+        assertEquals(Arrays.asList(false, true), passBulkLoad(2));
+    }
+
+    @Test
+    void passThatThrowsStillRunsTheRequestedRerun() throws Exception {
+        when(bulkService.ingestDataCall(any(), any(), anyBoolean())).thenAnswer(invocation -> {
+            firstPassStarted.countDown();
+            firstPassMayEnd.await();
+            throw new IOException("collector directory unreadable");
+        }).thenReturn(status(true));
+
+        IngestJobDTO job = jobService.trigger();
+        assertTrue(firstPassStarted.await(5, TimeUnit.SECONDS));
+        jobService.trigger();
+        firstPassMayEnd.countDown();
+
+        job = awaitFinished(job);
+        assertEquals("FAILED", job.getState());
+        assertEquals("collector directory unreadable", job.getMessage());
+        assertEquals(2, job.getRuns());
+    }
+
+    @Test
+    void triggerAfterAJobFinishedStartsANewOne() throws Exception {
+        when(bulkService.ingestDataCall(any(), any(), anyBoolean())).thenReturn(status(false), status(true));
+
+        IngestJobDTO failed = awaitFinished(jobService.trigger());
+        IngestJobDTO next = awaitFinished(jobService.trigger());
+
+        assertEquals("FAILED", failed.getState());
+        assertEquals("SUCCEEDED", next.getState());
+        assertEquals(1, next.getRuns());
+        assertNotEquals(failed.getId(), next.getId());
+        assertEquals(next.getId(), jobService.getLatestJob().getId());
+    }
+
+    @Test
+    void unknownJobIsNull() {
+        assertNull(jobService.getJob("no-such-job"));
+    }
+
+    private void firstPassBlocks(IngestStatusDTO firstStatus) throws Exception {
+        when(bulkService.ingestDataCall(any(), any(), anyBoolean())).thenAnswer(invocation -> {
+            firstPassStarted.countDown();
+            firstPassMayEnd.await();
+            return firstStatus;
+        }).thenReturn(status(true));
+    }
+
+    private IngestJobDTO awaitFinished(IngestJobDTO job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            IngestJobDTO current = jobService.getJob(job.getId());
+            if (current.getFinishedAt() > 0) {
+                return current;
+            }
+            Thread.sleep(10);
+        }
+        fail("Job " + job.getId() + " did not finish");
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Set<Path>> passFiles(int passes) throws Exception {
+        ArgumentCaptor<Set<Path>> files = ArgumentCaptor.forClass(Set.class);
+        verify(bulkService, times(passes)).ingestDataCall(any(), files.capture(), anyBoolean());
+        return files.getAllValues();
+    }
+
+    private List<Boolean> passBulkLoad(int passes) throws Exception {
+        ArgumentCaptor<Boolean> bulkLoad = ArgumentCaptor.forClass(Boolean.class);
+        verify(bulkService, times(passes)).ingestDataCall(any(), any(), bulkLoad.capture());
+        return bulkLoad.getAllValues();
+    }
+
+    private static IngestStatusDTO status(boolean succeeded) {
+        return new IngestStatusDTO(succeeded, succeeded ? "Operation successful" : "Operation failed");
+    }
+}
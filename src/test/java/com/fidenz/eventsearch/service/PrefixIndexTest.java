@@ -0,0 +1,90 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.dto.CompletionDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrefixIndexTest {
+
+    @Test
+    void prefixMatchesIgnoreCase() {
+        PrefixIndex index = PrefixIndex.of(counts("Camera-1", 5, "camera-2", 3, "Door", 7), 10);
+
+        assertEquals(Arrays.asList(new CompletionDTO("Camera-1", 5), new CompletionDTO("camera-2", 3)),
+                index.complete("CAM", 10));
+    }
+
+    @Test
+    void valuesDifferingOnlyInCaseAreAllFound() {
+        PrefixIndex index = PrefixIndex.of(counts("Lobby", 2, "LOBBY", 4, "lobby", 1, "Loading", 3, "Mall", 9), 10);
+
+        List<CompletionDTO> expected = Arrays.asList(
+                new CompletionDTO("LOBBY", 4), new CompletionDTO("Lobby", 2), new CompletionDTO("lobby", 1));
+        assertEquals(expected, index.complete("lobby", 10));
+        assertEquals(expected, index.complete("LoBbY", 10));
+    }
+
+    @Test
+    void mostFrequentComeFirstUpToTheLimit() {
+        PrefixIndex index = PrefixIndex.of(counts("gate-a", 1, "gate-b", 8, "gate-c", 5, "gate-d", 2, "garage", 20), 10);
+
+        assertEquals(Arrays.asList(new CompletionDTO("gate-b", 8), new CompletionDTO("gate-c", 5)),
+                index.complete("gate", 2));
+        assertEquals(Arrays.asList(new CompletionDTO("garage", 20), new CompletionDTO("gate-b", 8)),
+                index.complete("", 2));
+    }
+
+    @Test
+    void unmatchedPrefixCompletesNothing() {
+        PrefixIndex index = PrefixIndex.of(counts("Camera-1", 5), 10);
+
+        assertTrue(index.complete("zz", 10).isEmpty());
+        assertTrue(index.complete("Camera-10", 10).isEmpty());
+        assertTrue(PrefixIndex.EMPTY.complete("", 10).isEmpty());
+    }
+
+    @Test
+    void ofKeepsTheMostFrequentValues() {
+        PrefixIndex index = PrefixIndex.of(counts("a", 1, "b", 4, "c", 3), 2);
+
+        assertEquals(2, index.size());
+        assertEquals(Arrays.asList(new CompletionDTO("b", 4), new CompletionDTO("c", 3)), index.complete("", 10));
+    }
+
+    @Test
+    void mergeAddsCountsAndEvictsTheLeastFrequent() {
+        PrefixIndex index = PrefixIndex.of(counts("a", 5, "b", 3), 3);
+
+        PrefixIndex merged = index.merge(counts("b", 4, "c", 1, "d", 2), 3);
+
+        assertEquals(3, merged.size());
+        assertEquals(Arrays.asList(new CompletionDTO("b", 7), new CompletionDTO("a", 5), new CompletionDTO("d", 2)),
+                merged.complete("", 10));
+        assertTrue(merged.complete("c", 10).isEmpty());
+        assertEquals(Arrays.asList(new CompletionDTO("a", 5), new CompletionDTO("b", 3)), index.complete("", 10));
+    }
+
+    @Test
+    void mergingNothingKeepsTheIndex() {
+        PrefixIndex index = PrefixIndex.of(counts("a", 5), 3);
+
+        assertSame(index, index.merge(Collections.emptyMap(), 3));
+    }
+
+    private static Map<String, Long> counts(Object... valueCounts) {
+        Map<String, Long> counts = new HashMap<>();
+        for (int i = 0; i < valueCounts.length; i += 2) {
+            counts.put((String) valueCounts[i], ((Integer) valueCounts[i + 1]).longValue());
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,78 @@
+package com.fidenz.eventsearch.service;
+
+import com.fidenz.eventsearch.dto.FilterDTO;
+import com.fidenz.eventsearch.dto.TimeRangeDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class RequestKeyTest {
+
+    @Test
+    void filtersInAnyOrderShareAKey() {
+        String key = RequestKey.of("search").filters(Arrays.asList(
+                new FilterDTO("Agg.Name", "a"), new FilterDTO("MessageType", "x"), new FilterDTO("Agg.Name", "b"))).build();
+        String reordered = RequestKey.of("search").filters(Arrays.asList(
+                new FilterDTO("MessageType", "x"), new FilterDTO("Agg.Name", "b"), new FilterDTO("Agg.Name", "a"))).build();
+
+        assertEquals(key, reordered);
+    }
+
+    @Test
+    void partsThatConcatenateAlikeDoNotCollide() {
+        assertNotEquals(RequestKey.of("search").add("ab").add("c").build(),
+                RequestKey.of("search").add("a").add("bc").build());
+        assertNotEquals(RequestKey.of("search").add(null).build(),
+                RequestKey.of("search").add("-").build());
+    }
+
+    @Test
+    void filterValuesCannotImitateOtherFilters() {
+        String twoFilters = RequestKey.of("search").filters(Arrays.asList(
+                new FilterDTO("Agg.Name", "a"), new FilterDTO("MessageType", "x"))).build();
+        String oneFilter = RequestKey.of("search").filters(Collections.singletonList(
+                new FilterDTO("Agg.Name", "a1:x11:MessageType1:x"))).build();
+
+        assertNotEquals(twoFilters, oneFilter);
+    }
+
+    @Test
+    void boundsDifferingOnlyInZoneShareAKey() {
+        String utc = RequestKey.of("counter")
+                .timeRange(new TimeRangeDTO("2021-01-01T00:00:00Z", "2021-01-02T00:00:00.000Z")).build();
+        String tokyo = RequestKey.of("counter")
+                .timeRange(new TimeRangeDTO(" 2021-01-01T09:00:00+09:00", "2021-01-02T09:00:00.000+09:00")).build();
+
+        assertEquals(utc, tokyo);
+    }
+
+    @Test
+    void boundsWithoutZoneAreReadAsUtc() {
+        assertEquals(RequestKey.of("counter").timeRange(new TimeRangeDTO("2021-01-01T10:15:00", null)).build(),
+                RequestKey.of("counter").timeRange(new TimeRangeDTO("2021-01-01T10:15:00Z", null)).build());
+    }
+
+    @Test
+    void boundsOfDifferentPrecisionDoNotShareAKey() {
+        assertNotEquals(RequestKey.of("counter").timeRange(new TimeRangeDTO(null, "2021-01-01")).build(),
+                RequestKey.of("counter").timeRange(new TimeRangeDTO(null, "2021-01-01T00:00:00Z")).build());
+        assertNotEquals(RequestKey.of("counter").timeRange(new TimeRangeDTO(null, "2021-01-01T00:00:00Z")).build(),
+                RequestKey.of("counter").timeRange(new TimeRangeDTO(null, "2021-01-01T00:00:00.000Z")).build());
+    }
+
+    @Test
+    void dateMathIsKeptAsWritten() {
+        assertNotEquals(RequestKey.of("counter").timeRange(new TimeRangeDTO("now-1d", "now")).build(),
+                RequestKey.of("counter").timeRange(new TimeRangeDTO("now-2d", "now")).build());
+    }
+
+    @Test
+    void missingTimeRangeMatchesAnUnboundedOne() {
+        assertEquals(RequestKey.of("counter").timeRange(null).build(),
+                RequestKey.of("counter").timeRange(new TimeRangeDTO()).build());
+    }
+}
@@ -0,0 +1,109 @@
+package com.fidenz.eventsearch.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    void callersOfTheSameKeyShareOneCall() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> call = new CompletableFuture<>();
+
+        CompletableFuture<String> first = singleFlight.execute("key", () -> {
+            calls.incrementAndGet();
+            return call;
+        });
+        CompletableFuture<String> second = singleFlight.execute("key", () -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        call.complete("result");
+
+        assertEquals(1, calls.get());
+        assertEquals("result", first.get());
+        assertEquals("result", second.get());
+    }
+
+    @Test
+    void differentKeysDoNotShare() {
+        AtomicInteger calls = new AtomicInteger();
+
+        singleFlight.execute("a", () -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        singleFlight.execute("b", () -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+
+        assertEquals(2, calls.get());
+        assertEquals(2, singleFlight.inFlight());
+    }
+
+    @Test
+    void completedCallIsRemovedSoTheNextCallerStartsAfresh() throws Exception {
+        CompletableFuture<String> call = new CompletableFuture<>();
+        singleFlight.execute("key", () -> call);
+        assertEquals(1, singleFlight.inFlight());
+
+        call.complete("old");
+        assertEquals(0, singleFlight.inFlight());
+
+        CompletableFuture<String> next = singleFlight.execute("key", () -> CompletableFuture.completedFuture("new"));
+        assertEquals("new", next.get());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void failureReachesEveryCaller() {
+        CompletableFuture<String> call = new CompletableFuture<>();
+        IllegalStateException failure = new IllegalStateException("boom");
+
+        CompletableFuture<String> first = singleFlight.execute("key", () -> call);
+        CompletableFuture<String> second = singleFlight.execute("key", () -> call);
+        call.completeExceptionally(failure);
+
+        assertSame(failure, assertThrows(ExecutionException.class, first::get).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, second::get).getCause());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void callThatThrowsFailsItsFutureAndIsRemoved() {
+        IllegalArgumentException failure = new IllegalArgumentException("bad request");
+
+        CompletableFuture<String> result = singleFlight.execute("key", () -> {
+            throw failure;
+        });
+
+        assertSame(failure, assertThrows(ExecutionException.class, result::get).getCause());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void cancellingOneCallerLeavesTheOthersWaiting() throws Exception {
+        CompletableFuture<String> call = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.execute("key", () -> call);
+        CompletableFuture<String> second = singleFlight.execute("key", () -> call);
+
+        first.cancel(true);
+        assertFalse(second.isDone());
+
+        call.complete("result");
+        assertTrue(first.isCancelled());
+        assertEquals("result", second.get());
+    }
+}